@@ -21,16 +21,112 @@ public class Config {
             .comment("The currency symbol to use in the stock market")
             .define("currencySymbol", "$");
 
+    private static final ForgeConfigSpec.BooleanValue USE_MATCHING_ENGINE_THREAD = BUILDER
+            .comment("Whether to run order matching on a dedicated engine thread instead of the server thread")
+            .define("useMatchingEngineThread", false);
+
+    private static final ForgeConfigSpec.IntValue MARKET_MAKER_LEVELS = BUILDER
+            .comment("Number of simulated quote levels kept on each side of every order book")
+            .defineInRange("marketMakerLevels", 5, 0, 50);
+
+    private static final ForgeConfigSpec.DoubleValue MARKET_MAKER_SPREAD = BUILDER
+            .comment("Gap between the simulated best bid and best ask, as a fraction of the price")
+            .defineInRange("marketMakerSpread", 0.01, 0.0, 1.0);
+
+    private static final ForgeConfigSpec.DoubleValue MARKET_MAKER_LEVEL_STEP = BUILDER
+            .comment("Gap between neighbouring simulated quote levels, as a fraction of the price")
+            .defineInRange("marketMakerLevelStep", 0.01, 0.0, 1.0);
+
+    private static final ForgeConfigSpec.IntValue MARKET_MAKER_SIZE = BUILDER
+            .comment("Quantity of each simulated quote")
+            .defineInRange("marketMakerSize", 50, 1, 1_000_000);
+
+    private static final ForgeConfigSpec.DoubleValue PRICE_VOLATILITY = BUILDER
+            .comment("Standard deviation of each simulated stock's log return per market update")
+            .defineInRange("priceVolatility", 0.03, 0.0, 1.0);
+
+    private static final ForgeConfigSpec.DoubleValue MARKET_FACTOR_LOADING = BUILDER
+            .comment("How strongly every simulated stock follows the market as a whole")
+            .defineInRange("marketFactorLoading", 0.5, 0.0, 0.7);
+
+    private static final ForgeConfigSpec.DoubleValue SECTOR_FACTOR_LOADING = BUILDER
+            .comment("How strongly every simulated stock follows its sector")
+            .defineInRange("sectorFactorLoading", 0.4, 0.0, 0.7);
+
+    private static final ForgeConfigSpec.DoubleValue MARK_TRADE_WEIGHT = BUILDER
+            .comment("Weight of the last trade in a stock's mark price")
+            .defineInRange("markTradeWeight", 0.4, 0.0, 1.0);
+
+    private static final ForgeConfigSpec.DoubleValue MARK_MID_WEIGHT = BUILDER
+            .comment("Weight of the mid between best bid and best ask in a stock's mark price")
+            .defineInRange("markMidWeight", 0.3, 0.0, 1.0);
+
+    private static final ForgeConfigSpec.DoubleValue MARK_MODEL_WEIGHT = BUILDER
+            .comment("Weight of the simulated model price in a stock's mark price")
+            .defineInRange("markModelWeight", 0.3, 0.0, 1.0);
+
+    private static final ForgeConfigSpec.IntValue MARK_TRADE_LIFETIME = BUILDER
+            .comment("Game ticks over which the last trade's weight in a stock's mark price fades out")
+            .defineInRange("markTradeLifetime", 20 * 60 * 5, 1, Integer.MAX_VALUE);
+
+    private static final ForgeConfigSpec.IntValue HISTORY_CAPACITY = BUILDER
+            .comment("Number of price points kept per stock in the market history")
+            .defineInRange("historyCapacity", 10_000, 1, 1_000_000);
+
+    private static final ForgeConfigSpec.IntValue MINUTE_CANDLES = BUILDER
+            .comment("Number of 1-minute candles kept per stock")
+            .defineInRange("minuteCandles", 24 * 60, 1, 1_000_000);
+
+    private static final ForgeConfigSpec.IntValue HOUR_CANDLES = BUILDER
+            .comment("Number of 1-hour candles kept per stock")
+            .defineInRange("hourCandles", 24 * 30, 1, 1_000_000);
+
+    private static final ForgeConfigSpec.IntValue GAME_DAY_CANDLES = BUILDER
+            .comment("Number of 1-game-day candles kept per stock")
+            .defineInRange("gameDayCandles", 360, 1, 1_000_000);
+
     static final ForgeConfigSpec SPEC = BUILDER.build();
 
     public static boolean enableStockMarket;
     public static int initialBalance;
     public static String currencySymbol;
+    public static boolean useMatchingEngineThread;
+    public static int marketMakerLevels;
+    public static double marketMakerSpread;
+    public static double marketMakerLevelStep;
+    public static int marketMakerSize;
+    public static double priceVolatility;
+    public static double marketFactorLoading;
+    public static double sectorFactorLoading;
+    public static double markTradeWeight;
+    public static double markMidWeight;
+    public static double markModelWeight;
+    public static int markTradeLifetime;
+    public static int historyCapacity;
+    public static int minuteCandles;
+    public static int hourCandles;
+    public static int gameDayCandles;
 
     @SubscribeEvent
     static void onLoad(final ModConfigEvent event) {
         enableStockMarket = ENABLE_STOCK_MARKET.get();
         initialBalance = INITIAL_BALANCE.get();
         currencySymbol = CURRENCY_SYMBOL.get();
+        useMatchingEngineThread = USE_MATCHING_ENGINE_THREAD.get();
+        marketMakerLevels = MARKET_MAKER_LEVELS.get();
+        marketMakerSpread = MARKET_MAKER_SPREAD.get();
+        marketMakerLevelStep = MARKET_MAKER_LEVEL_STEP.get();
+        marketMakerSize = MARKET_MAKER_SIZE.get();
+        priceVolatility = PRICE_VOLATILITY.get();
+        marketFactorLoading = MARKET_FACTOR_LOADING.get();
+        sectorFactorLoading = SECTOR_FACTOR_LOADING.get();
+        markTradeWeight = MARK_TRADE_WEIGHT.get();
+        markMidWeight = MARK_MID_WEIGHT.get();
+        markModelWeight = MARK_MODEL_WEIGHT.get();
+        markTradeLifetime = MARK_TRADE_LIFETIME.get();
+        historyCapacity = HISTORY_CAPACITY.get();
+        minuteCandles = MINUTE_CANDLES.get();
+        hourCandles = HOUR_CANDLES.get();
+        gameDayCandles = GAME_DAY_CANDLES.get();
     }
 } 
\ No newline at end of file
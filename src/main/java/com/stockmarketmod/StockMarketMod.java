@@ -3,7 +3,9 @@ package com.stockmarketmod;
 import com.mojang.logging.LogUtils;
 import com.stockmarketmod.block.NasdaqTerminalBlock;
 import com.stockmarketmod.item.NasdaqTerminalItem;
+import com.stockmarketmod.model.CandleHistory;
 import com.stockmarketmod.screen.NasdaqTerminalMenu;
+import com.stockmarketmod.service.StockDefinitionLoader;
 import com.stockmarketmod.service.StockMarketService;
 import com.stockmarketmod.sound.ModSounds;
 import net.minecraft.client.Minecraft;
@@ -16,9 +18,12 @@ import net.minecraft.world.level.block.state.BlockBehaviour;
 import net.minecraft.world.level.material.MapColor;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.AddReloadListenerEvent;
 import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.BuildCreativeModeTabContentsEvent;
 import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
@@ -46,7 +51,6 @@ public class StockMarketMod {
     public static final RegistryObject<Item> NASDAQ_TERMINAL_ITEM = ITEMS.register("nasdaq_terminal", 
         () -> new NasdaqTerminalItem(NASDAQ_TERMINAL.get()));
     
-    private final StockMarketService stockMarketService;
     
     public StockMarketMod(FMLJavaModLoadingContext context) {
         IEventBus modEventBus = context.getModEventBus();
@@ -69,9 +73,6 @@ public class StockMarketMod {
         // Register our mod's ForgeConfigSpec so that Forge can create and load the config file for us
         context.registerConfig(ModConfig.Type.COMMON, Config.SPEC);
         
-        // Initialize the stock market service
-        this.stockMarketService = StockMarketService.getInstance();
-        
         // Register the mod event bus for the client setup
         modEventBus.addListener((FMLClientSetupEvent event) -> {
             LOGGER.info("Stock Market Mod client setup");
@@ -90,14 +91,46 @@ public class StockMarketMod {
         LOGGER.info("Stock Market Mod initialized");
     }
 
+    @SubscribeEvent
+    public void onAddReloadListeners(AddReloadListenerEvent event) {
+        // Stock definitions are read from the "stocks" folder of every datapack
+        event.addListener(new StockDefinitionLoader());
+    }
+
     @SubscribeEvent
     public void onServerStarting(ServerStartingEvent event) {
         // Initialize the stock market service for the server
         ServerLevel level = event.getServer().overworld();
-        StockMarketService.get(level);
+        StockMarketService service = StockMarketService.get(level);
+        service.getMarketMaker().configure(Config.marketMakerLevels, Config.marketMakerSpread,
+            Config.marketMakerLevelStep, Config.marketMakerSize);
+        service.getPriceModel().configure(Config.priceVolatility, 0.0,
+            Config.marketFactorLoading, Config.sectorFactorLoading);
+        service.getMarketHistory().setCapacity(Config.historyCapacity);
+        service.getCandles().setRetention(CandleHistory.Resolution.MINUTE, Config.minuteCandles);
+        service.getCandles().setRetention(CandleHistory.Resolution.HOUR, Config.hourCandles);
+        service.getCandles().setRetention(CandleHistory.Resolution.GAME_DAY, Config.gameDayCandles);
+        if (Config.markTradeWeight + Config.markMidWeight + Config.markModelWeight > 0) {
+            service.getPriceEngine().configure(Config.markTradeWeight, Config.markMidWeight, Config.markModelWeight);
+        }
+        service.getPriceEngine().setTradeLifetime(Config.markTradeLifetime);
+        if (Config.useMatchingEngineThread) {
+            service.startMatchingEngine();
+        }
         LOGGER.info("Stock Market Mod server starting");
     }
 
+    @SubscribeEvent
+    public void onServerStopping(ServerStoppingEvent event) {
+        StockMarketService.get(event.getServer().overworld()).stopMatchingEngine();
+    }
+
+    @SubscribeEvent
+    public void onServerStopped(ServerStoppedEvent event) {
+        // The next world started in this game loads its own market
+        StockMarketService.unload();
+    }
+
     @SubscribeEvent
     public void onServerTick(TickEvent.ServerTickEvent event) {
         if (event.phase == TickEvent.Phase.END) {
@@ -3,7 +3,10 @@ package com.stockmarketmod.manager;
 import com.stockmarketmod.model.Market;
 import com.stockmarketmod.model.Order;
 import com.stockmarketmod.model.PlayerPortfolio;
+import com.stockmarketmod.model.StockDefinition;
+import com.stockmarketmod.model.StockUniverse;
 import com.stockmarketmod.network.NetworkManager;
+import com.stockmarketmod.service.StockMarketService;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
@@ -19,6 +22,7 @@ import java.util.UUID;
 
 @Mod.EventBusSubscriber
 public class MarketManager extends SavedData {
+    private static final double BOOK_VOLATILITY = 0.1;
     private static MarketManager instance;
     private final Market market;
     private final Map<UUID, PlayerPortfolio> playerPortfolios;
@@ -28,7 +32,7 @@ public class MarketManager extends SavedData {
         this.market = new Market();
         this.playerPortfolios = new HashMap<>();
         this.tickCounter = 0;
-        initializeMarket();
+        applyDefinitions(StockMarketService.getUniverse());
     }
 
     public static MarketManager getInstance() {
@@ -38,15 +42,25 @@ public class MarketManager extends SavedData {
         return instance;
     }
 
-    private void initializeMarket() {
-        // Register initial stocks
-        market.registerStock("DIAMOND", 100.0, 0.1);  // High value, low volatility
-        market.registerStock("IRON", 50.0, 0.2);      // Medium value, medium volatility
-        market.registerStock("COAL", 25.0, 0.3);      // Low value, high volatility
+    /**
+     * Lists the stocks of newly loaded datapack definitions, e.g. after a reload. Stocks that
+     * are already listed keep their price and book.
+     */
+    public static void refreshUniverse(StockUniverse universe) {
+        if (instance != null) {
+            instance.applyDefinitions(universe);
+        }
+    }
+
+    private void applyDefinitions(StockUniverse universe) {
+        // List the stocks defined by the loaded datapacks; books are created once traded
+        for (StockDefinition definition : universe.getStocks()) {
+            market.listStock(definition.getSymbol(), definition.getBasePrice(), BOOK_VOLATILITY, definition.getTickSize());
+        }
     }
 
     public void placeOrder(UUID playerId, String symbol, Order.OrderType type, double price, int quantity) {
-        Order order = new Order(UUID.randomUUID(), playerId, symbol, type, price, quantity);
+        Order order = new Order(playerId, symbol, type, price, quantity);
         market.placeOrder(order);
     }
 
@@ -59,7 +73,7 @@ public class MarketManager extends SavedData {
     }
 
     public Set<String> getRegisteredSymbols() {
-        return market.getOrderBooks().keySet();
+        return market.getSymbols();
     }
 
     @SubscribeEvent
@@ -67,6 +81,7 @@ public class MarketManager extends SavedData {
         if (event.phase == TickEvent.Phase.END) {
             MarketManager manager = getInstance();
             manager.tickCounter++;
+            manager.market.setGameTick(manager.tickCounter);
 
             // Update market every 20 ticks (1 second)
             if (manager.tickCounter % 20 == 0) {
@@ -77,9 +92,7 @@ public class MarketManager extends SavedData {
 
     private void updateMarket() {
         // Update market prices and handle any periodic events
-        for (String symbol : getRegisteredSymbols()) {
-            market.updatePrice(symbol);
-        }
+        market.updatePrices();
         setDirty();
     }
 
@@ -0,0 +1,78 @@
+package com.stockmarketmod.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps player UUIDs to compact account numbers for use inside the order books.
+ * <p>
+ * Accounts are numbered from 1 in the order players first trade, and a number is never
+ * reused, so 0 can stand for "no account". Looking up an existing account is lock-free;
+ * only opening a new one synchronizes.
+ */
+public final class AccountRegistry {
+    public static final int NO_ACCOUNT = 0;
+
+    private final Map<UUID, Integer> accountsByPlayer = new ConcurrentHashMap<>();
+    private volatile UUID[] players = new UUID[16]; // Index is the account number
+    private int count;
+
+    public int accountFor(UUID playerId) {
+        if (playerId == null) {
+            return NO_ACCOUNT;
+        }
+        Integer account = accountsByPlayer.get(playerId);
+        return account != null ? account : open(playerId);
+    }
+
+    private synchronized int open(UUID playerId) {
+        Integer account = accountsByPlayer.get(playerId);
+        if (account != null) {
+            return account;
+        }
+        int next = count + 1;
+        UUID[] current = players;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[next] = playerId;
+        players = current; // Publish the slot before the lookup can hand out its number
+        count = next;
+        accountsByPlayer.put(playerId, next);
+        return next;
+    }
+
+    public UUID playerFor(int account) {
+        UUID[] current = players;
+        return account > 0 && account < current.length ? current[account] : null;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized void clear() {
+        accountsByPlayer.clear();
+        players = new UUID[16];
+        count = 0;
+    }
+
+    // Packs the players as most/least significant bit pairs, in account order
+    public synchronized long[] toLongArray() {
+        long[] packed = new long[count * 2];
+        for (int account = 1; account <= count; account++) {
+            packed[(account - 1) * 2] = players[account].getMostSignificantBits();
+            packed[(account - 1) * 2 + 1] = players[account].getLeastSignificantBits();
+        }
+        return packed;
+    }
+
+    public synchronized void fromLongArray(long[] packed) {
+        clear();
+        for (int i = 0; i + 1 < packed.length; i += 2) {
+            open(new UUID(packed[i], packed[i + 1]));
+        }
+    }
+}
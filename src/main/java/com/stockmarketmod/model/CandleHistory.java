@@ -0,0 +1,394 @@
+package com.stockmarketmod.model;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraftforge.common.util.INBTSerializable;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Open, high, low, close and volume bars of every traded symbol at several resolutions.
+ * <p>
+ * Fills and price updates are folded into the current bar of each resolution as they
+ * arrive, so a chart over a long range reads a handful of bars instead of rescanning raw
+ * points. Each resolution keeps its bars in its own ring of primitive arrays with its own
+ * retention. The arrays start small and double as bars are added, up to the retention;
+ * once a ring is full a new bar replaces the oldest one.
+ * <p>
+ * Fills arrive on the matching thread and price updates on the server thread, so every
+ * ring is guarded by its own monitor.
+ */
+public class CandleHistory implements FillRing.FillListener, INBTSerializable<CompoundTag> {
+    public enum Resolution {
+        MINUTE(20L * 60, 24 * 60),        // A real day of minutes
+        HOUR(20L * 60 * 60, 24 * 30),     // A real month of hours
+        GAME_DAY(24_000L, 360);           // A game day is 20 real minutes
+
+        private final long ticks;
+        private final int defaultRetention;
+
+        Resolution(long ticks, int defaultRetention) {
+            this.ticks = ticks;
+            this.defaultRetention = defaultRetention;
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public int getDefaultRetention() {
+            return defaultRetention;
+        }
+
+        // Start tick of the bar the given tick falls in
+        public long barStart(long tick) {
+            return Math.floorDiv(tick, ticks) * ticks;
+        }
+    }
+
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+
+    private final Map<String, Bars[]> symbols = new ConcurrentHashMap<>(); // Indexed by resolution ordinal
+    private final Map<Resolution, Integer> retention = new EnumMap<>(Resolution.class);
+
+    public CandleHistory() {
+        for (Resolution resolution : RESOLUTIONS) {
+            retention.put(resolution, resolution.getDefaultRetention());
+        }
+    }
+
+    /**
+     * Sets how many bars of a resolution every symbol keeps. Shrinking drops the oldest bars.
+     */
+    public synchronized void setRetention(Resolution resolution, int bars) {
+        if (bars <= 0) {
+            throw new IllegalArgumentException("Candle retention must be positive: " + bars);
+        }
+        retention.put(resolution, bars);
+        for (Bars[] series : symbols.values()) {
+            series[resolution.ordinal()].resize(bars);
+        }
+    }
+
+    public synchronized int getRetention(Resolution resolution) {
+        return retention.get(resolution);
+    }
+
+    @Override
+    public void onFills(FillRing fills, long fromSequence, long toSequence) {
+        for (long sequence = fromSequence; sequence < toSequence; sequence++) {
+            record(fills.getSymbol(sequence), fills.getPrice(sequence), fills.getQuantity(sequence),
+                fills.getGameTick(sequence));
+        }
+    }
+
+    /**
+     * Folds a trade, or a price update with no trade behind it and a volume of 0, into every
+     * resolution's bar for the tick.
+     */
+    public void record(String symbol, double price, long volume, long tick) {
+        for (Bars bars : series(symbol)) {
+            bars.update(tick, price, volume);
+        }
+    }
+
+    public boolean hasCandles(String symbol) {
+        return symbols.containsKey(symbol);
+    }
+
+    /**
+     * Copies the bars starting in {@code fromTick <= start < toTick}, oldest first, into a
+     * buffer the caller owns, as many as it holds.
+     *
+     * @return the number of bars copied
+     */
+    public int copyRange(String symbol, Resolution resolution, long fromTick, long toTick, Candles out) {
+        Bars[] series = symbols.get(symbol);
+        if (series == null) {
+            out.size = 0;
+            return 0;
+        }
+        return series[resolution.ordinal()].copyRange(fromTick, toTick, out);
+    }
+
+    // The newest bars of the symbol, oldest first, as many as the buffer holds
+    public int copyLatest(String symbol, Resolution resolution, Candles out) {
+        Bars[] series = symbols.get(symbol);
+        if (series == null) {
+            out.size = 0;
+            return 0;
+        }
+        return series[resolution.ordinal()].copyLatest(out);
+    }
+
+    private Bars[] series(String symbol) {
+        Bars[] series = symbols.get(symbol);
+        if (series != null) {
+            return series;
+        }
+        synchronized (this) {
+            return symbols.computeIfAbsent(symbol, s -> {
+                Bars[] created = new Bars[RESOLUTIONS.length];
+                for (Resolution resolution : RESOLUTIONS) {
+                    created[resolution.ordinal()] = new Bars(resolution, retention.get(resolution));
+                }
+                return created;
+            });
+        }
+    }
+
+    @Override
+    public CompoundTag serializeNBT() {
+        CompoundTag tag = new CompoundTag();
+        for (Map.Entry<String, Bars[]> entry : symbols.entrySet()) {
+            CompoundTag symbolTag = new CompoundTag();
+            for (Bars bars : entry.getValue()) {
+                symbolTag.putLongArray(bars.resolution.name().toLowerCase(Locale.ROOT), bars.pack());
+            }
+            tag.put(entry.getKey(), symbolTag);
+        }
+        return tag;
+    }
+
+    @Override
+    public void deserializeNBT(CompoundTag tag) {
+        symbols.clear();
+        for (String symbol : tag.getAllKeys()) {
+            CompoundTag symbolTag = tag.getCompound(symbol);
+            for (Bars bars : series(symbol)) {
+                bars.unpack(symbolTag.getLongArray(bars.resolution.name().toLowerCase(Locale.ROOT)));
+            }
+        }
+    }
+
+    /**
+     * Caller-owned buffers for a run of bars, refilled in place by
+     * {@link CandleHistory#copyRange} and {@link CandleHistory#copyLatest}.
+     */
+    public static class Candles {
+        private final long[] starts;
+        private final double[] opens;
+        private final double[] highs;
+        private final double[] lows;
+        private final double[] closes;
+        private final long[] volumes;
+        private int size;
+
+        public Candles(int capacity) {
+            this.starts = new long[capacity];
+            this.opens = new double[capacity];
+            this.highs = new double[capacity];
+            this.lows = new double[capacity];
+            this.closes = new double[capacity];
+            this.volumes = new long[capacity];
+        }
+
+        public int getCapacity() {
+            return starts.length;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getStart(int index) {
+            return starts[index];
+        }
+
+        public double getOpen(int index) {
+            return opens[index];
+        }
+
+        public double getHigh(int index) {
+            return highs[index];
+        }
+
+        public double getLow(int index) {
+            return lows[index];
+        }
+
+        public double getClose(int index) {
+            return closes[index];
+        }
+
+        public long getVolume(int index) {
+            return volumes[index];
+        }
+    }
+
+    // One symbol's bars at one resolution, in a ring ordered by start tick
+    private static final class Bars {
+        private static final int FIELDS = 6; // Longs per bar when packed
+        private static final int INITIAL_LENGTH = 64;
+
+        private final Resolution resolution;
+        private int capacity; // The arrays grow up to this many bars
+        private long[] starts;
+        private double[] opens;
+        private double[] highs;
+        private double[] lows;
+        private double[] closes;
+        private long[] volumes;
+        private int first; // Slot of the oldest bar
+        private int size;
+        private long latestTick = Long.MIN_VALUE; // Of the price that set the newest close
+
+        private Bars(Resolution resolution, int capacity) {
+            this.resolution = resolution;
+            this.capacity = capacity;
+            allocate(Math.min(INITIAL_LENGTH, capacity));
+        }
+
+        private void allocate(int length) {
+            starts = new long[length];
+            opens = new double[length];
+            highs = new double[length];
+            lows = new double[length];
+            closes = new double[length];
+            volumes = new long[length];
+        }
+
+        private synchronized void update(long tick, double price, long volume) {
+            long start = resolution.barStart(tick);
+            if (size == 0 || starts[slot(size - 1)] < start) {
+                append(start, price, volume);
+                latestTick = tick;
+                return;
+            }
+            // Usually the current bar, but late data may belong to an older one still kept
+            int index = starts[slot(size - 1)] == start ? size - 1 : indexOf(start);
+            if (index < 0) {
+                return;
+            }
+            int slot = slot(index);
+            highs[slot] = Math.max(highs[slot], price);
+            lows[slot] = Math.min(lows[slot], price);
+            if (index == size - 1 && tick >= latestTick) {
+                closes[slot] = price;
+                latestTick = tick;
+            }
+            volumes[slot] += volume;
+        }
+
+        private void append(long start, double price, long volume) {
+            if (size == starts.length && size < capacity) {
+                // The ring only wraps once it has reached its capacity, so the bars are in order
+                int grown = (int) Math.min((long) size * 2, capacity);
+                starts = Arrays.copyOf(starts, grown);
+                opens = Arrays.copyOf(opens, grown);
+                highs = Arrays.copyOf(highs, grown);
+                lows = Arrays.copyOf(lows, grown);
+                closes = Arrays.copyOf(closes, grown);
+                volumes = Arrays.copyOf(volumes, grown);
+            }
+            int length = starts.length;
+            int slot = first + size;
+            if (slot >= length) {
+                slot -= length;
+            }
+            if (size < length) {
+                size++;
+            } else if (++first == length) {
+                // Full, so the new bar took the oldest one's slot
+                first = 0;
+            }
+            starts[slot] = start;
+            opens[slot] = price;
+            highs[slot] = price;
+            lows[slot] = price;
+            closes[slot] = price;
+            volumes[slot] = volume;
+        }
+
+        private int slot(int index) {
+            int slot = first + index;
+            return slot >= starts.length ? slot - starts.length : slot;
+        }
+
+        // Index of the bar starting at the given tick, or -1
+        private int indexOf(long start) {
+            int index = firstAtOrAfter(start);
+            return index < size && starts[slot(index)] == start ? index : -1;
+        }
+
+        private int firstAtOrAfter(long tick) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (starts[slot(middle)] < tick) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private synchronized int copyRange(long fromTick, long toTick, Candles out) {
+            int from = firstAtOrAfter(fromTick);
+            int to = firstAtOrAfter(toTick);
+            return copy(from, Math.min(Math.max(to - from, 0), out.getCapacity()), out);
+        }
+
+        private synchronized int copyLatest(Candles out) {
+            int count = Math.min(size, out.getCapacity());
+            return copy(size - count, count, out);
+        }
+
+        private int copy(int from, int count, Candles out) {
+            for (int i = 0; i < count; i++) {
+                int slot = slot(from + i);
+                out.starts[i] = starts[slot];
+                out.opens[i] = opens[slot];
+                out.highs[i] = highs[slot];
+                out.lows[i] = lows[slot];
+                out.closes[i] = closes[slot];
+                out.volumes[i] = volumes[slot];
+            }
+            out.size = count;
+            return count;
+        }
+
+        private synchronized void resize(int capacity) {
+            long[] packed = pack();
+            long tick = latestTick;
+            first = 0;
+            size = 0;
+            this.capacity = capacity;
+            allocate(Math.max(Math.min(packed.length / FIELDS, capacity), Math.min(INITIAL_LENGTH, capacity)));
+            unpack(packed);
+            latestTick = tick;
+        }
+
+        private synchronized long[] pack() {
+            long[] packed = new long[size * FIELDS];
+            for (int index = 0; index < size; index++) {
+                int slot = slot(index);
+                int offset = index * FIELDS;
+                packed[offset] = starts[slot];
+                packed[offset + 1] = Double.doubleToRawLongBits(opens[slot]);
+                packed[offset + 2] = Double.doubleToRawLongBits(highs[slot]);
+                packed[offset + 3] = Double.doubleToRawLongBits(lows[slot]);
+                packed[offset + 4] = Double.doubleToRawLongBits(closes[slot]);
+                packed[offset + 5] = volumes[slot];
+            }
+            return packed;
+        }
+
+        // Appends packed bars, oldest first; a full ring keeps the newest
+        private synchronized void unpack(long[] packed) {
+            for (int offset = 0; offset + FIELDS <= packed.length; offset += FIELDS) {
+                append(packed[offset], Double.longBitsToDouble(packed[offset + 1]), packed[offset + 5]);
+                int slot = slot(size - 1);
+                highs[slot] = Double.longBitsToDouble(packed[offset + 2]);
+                lows[slot] = Double.longBitsToDouble(packed[offset + 3]);
+                closes[slot] = Double.longBitsToDouble(packed[offset + 4]);
+                latestTick = packed[offset];
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.stockmarketmod.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Correlated price simulation for every stock of a {@link SectorRegistry}.
+ * <p>
+ * Each step moves every price by geometric Brownian motion. The random shock of a stock
+ * mixes a market factor, the factor of its top-level sector and an idiosyncratic part,
+ * scaled back to unit variance. The factors can be correlated with each other, so the
+ * factor shocks are drawn through the Cholesky factor of their correlation matrix. That
+ * factor and the per-stock loadings are cached, and only rebuilt after the configuration
+ * or the registry changes.
+ * <p>
+ * Stocks are evaluated in parallel chunks on the common fork-join pool. Every stock draws
+ * from its own {@link RandomStream}, so a step gives the same prices however the chunks
+ * are split and scheduled.
+ */
+public class FactorModel {
+    public static final double DEFAULT_VOLATILITY = 0.03;     // Per step
+    public static final double DEFAULT_MARKET_LOADING = 0.5;
+    public static final double DEFAULT_SECTOR_LOADING = 0.4;
+    private static final int CHUNK_SIZE = 256; // Stocks per fork-join task
+
+    private final SectorRegistry sectors;
+    private double volatility = DEFAULT_VOLATILITY;
+    private double drift;                                  // Per step
+    private double marketLoading = DEFAULT_MARKET_LOADING;
+    private double sectorLoading = DEFAULT_SECTOR_LOADING;
+    private final Map<String, Double> volatilityOverrides = new HashMap<>();
+    private final Map<String, Double> factorCorrelations = new HashMap<>(); // Keyed by sector pair
+
+    // Cached decomposition, rebuilt by prepare()
+    private boolean dirty = true;
+    private int preparedVersion = -1;
+    private List<String> factors;    // MARKET followed by the top-level sectors
+    private double[][] cholesky;     // Lower triangle of the factor correlation matrix
+    private int[] stockFactor;       // Index of each stock's sector factor
+    private double[] marketBeta;
+    private double[] sectorBeta;
+    private double[] idiosyncraticWeight;
+    private double[] drifts;         // Drift less the Ito correction, per stock
+    private double[] volatilities;
+    private double[] independentShocks;
+    private double[] factorShocks;
+
+    public FactorModel(SectorRegistry sectors) {
+        this.sectors = sectors;
+    }
+
+    /**
+     * @param volatility    standard deviation of a stock's log return per step
+     * @param drift         expected log return per step, before the volatility correction
+     * @param marketLoading weight of the market factor in every stock's shock
+     * @param sectorLoading weight of the sector factor in the shock of a stock with a sector
+     */
+    public void configure(double volatility, double drift, double marketLoading, double sectorLoading) {
+        if (volatility < 0 || marketLoading < 0 || sectorLoading < 0
+                || marketLoading * marketLoading + sectorLoading * sectorLoading > 1.0) {
+            throw new IllegalArgumentException("Invalid factor model settings");
+        }
+        this.volatility = volatility;
+        this.drift = drift;
+        this.marketLoading = marketLoading;
+        this.sectorLoading = sectorLoading;
+        dirty = true;
+    }
+
+    public void setVolatility(String symbol, double volatility) {
+        volatilityOverrides.put(symbol, volatility);
+        dirty = true;
+    }
+
+    /**
+     * Sets the correlation between two factors, each either {@link SectorRegistry#MARKET} or a
+     * top-level sector. Factors are uncorrelated unless set otherwise.
+     */
+    public void setFactorCorrelation(String first, String second, double correlation) {
+        if (correlation < -1.0 || correlation > 1.0) {
+            throw new IllegalArgumentException("Correlation must be between -1 and 1");
+        }
+        String key = pairKey(first, second);
+        Double previous = factorCorrelations.put(key, correlation);
+        dirty = true;
+        try {
+            // Rejected right away rather than on the next step
+            prepare();
+        } catch (IllegalArgumentException e) {
+            if (previous == null) {
+                factorCorrelations.remove(key);
+            } else {
+                factorCorrelations.put(key, previous);
+            }
+            throw e;
+        }
+    }
+
+    private static String pairKey(String first, String second) {
+        return first.compareTo(second) < 0 ? first + "|" + second : second + "|" + first;
+    }
+
+    /**
+     * Moves every price one step. Prices and streams are indexed by stock id, and only the
+     * first {@code count} stocks are stepped.
+     *
+     * @param factorRandom draws the factor shocks, once per step
+     * @param stockRandom  each stock's own stream, for its idiosyncratic shock
+     */
+    public void step(double[] prices, RandomStream factorRandom, RandomStream[] stockRandom, int count) {
+        prepare();
+        if (count > stockFactor.length) {
+            throw new IllegalArgumentException("More prices than registered stocks");
+        }
+        int factorCount = factors.size();
+        for (int factor = 0; factor < factorCount; factor++) {
+            independentShocks[factor] = factorRandom.nextGaussian();
+        }
+        for (int row = 0; row < factorCount; row++) {
+            double shock = 0.0;
+            for (int column = 0; column <= row; column++) {
+                shock += cholesky[row][column] * independentShocks[column];
+            }
+            factorShocks[row] = shock;
+        }
+
+        if (count <= CHUNK_SIZE) {
+            stepRange(prices, stockRandom, 0, count);
+        } else {
+            ForkJoinPool.commonPool().invoke(new StepTask(prices, stockRandom, 0, count));
+        }
+    }
+
+    private void stepRange(double[] prices, RandomStream[] stockRandom, int from, int to) {
+        double market = factorShocks[0];
+        for (int id = from; id < to; id++) {
+            double shock = marketBeta[id] * market
+                + sectorBeta[id] * factorShocks[stockFactor[id]]
+                + idiosyncraticWeight[id] * stockRandom[id].nextGaussian();
+            prices[id] *= Math.exp(drifts[id] + volatilities[id] * shock);
+        }
+    }
+
+    private final class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] prices;
+        private final RandomStream[] stockRandom;
+        private final int from;
+        private final int to;
+
+        private StepTask(double[] prices, RandomStream[] stockRandom, int from, int to) {
+            this.prices = prices;
+            this.stockRandom = stockRandom;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                stepRange(prices, stockRandom, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new StepTask(prices, stockRandom, from, middle), new StepTask(prices, stockRandom, middle, to));
+        }
+    }
+
+    // Rebuilds the cached decomposition and loadings if anything they depend on changed
+    private void prepare() {
+        if (!dirty && preparedVersion == sectors.getVersion()) {
+            return;
+        }
+        factors = new ArrayList<>();
+        factors.add(SectorRegistry.MARKET);
+        factors.addAll(sectors.getChildren(SectorRegistry.MARKET));
+        int factorCount = factors.size();
+
+        double[][] correlation = new double[factorCount][factorCount];
+        for (int row = 0; row < factorCount; row++) {
+            for (int column = 0; column < factorCount; column++) {
+                correlation[row][column] = row == column ? 1.0
+                    : factorCorrelations.getOrDefault(pairKey(factors.get(row), factors.get(column)), 0.0);
+            }
+        }
+        cholesky = cholesky(correlation);
+        independentShocks = new double[factorCount];
+        factorShocks = new double[factorCount];
+
+        int stockCount = sectors.getStockCount();
+        stockFactor = new int[stockCount];
+        marketBeta = new double[stockCount];
+        sectorBeta = new double[stockCount];
+        idiosyncraticWeight = new double[stockCount];
+        drifts = new double[stockCount];
+        volatilities = new double[stockCount];
+        for (int id = 0; id < stockCount; id++) {
+            String symbol = sectors.getSymbol(id);
+            int factor = factors.indexOf(topLevelSector(sectors.getHomeSector(symbol)));
+            double beta = factor > 0 ? sectorLoading : 0.0;
+            double idiosyncratic = Math.sqrt(Math.max(0.0, 1.0 - marketLoading * marketLoading - beta * beta));
+            // Correlated factors change the variance of the mix, so it is scaled back to one
+            double variance = marketLoading * marketLoading + beta * beta + idiosyncratic * idiosyncratic
+                + 2.0 * marketLoading * beta * correlation[0][Math.max(factor, 0)];
+            double scale = variance > 0 ? 1.0 / Math.sqrt(variance) : 0.0;
+
+            double sigma = volatilityOverrides.getOrDefault(symbol, volatility);
+            stockFactor[id] = Math.max(factor, 0);
+            marketBeta[id] = marketLoading * scale;
+            sectorBeta[id] = beta * scale;
+            idiosyncraticWeight[id] = idiosyncratic * scale;
+            drifts[id] = drift - 0.5 * sigma * sigma;
+            volatilities[id] = sigma;
+        }
+        dirty = false;
+        preparedVersion = sectors.getVersion();
+    }
+
+    private String topLevelSector(String sector) {
+        if (sector == null || sector.equals(SectorRegistry.MARKET)) {
+            return SectorRegistry.MARKET;
+        }
+        String parent = sectors.getParent(sector);
+        while (!parent.equals(SectorRegistry.MARKET)) {
+            sector = parent;
+            parent = sectors.getParent(sector);
+        }
+        return sector;
+    }
+
+    private static double[][] cholesky(double[][] matrix) {
+        int size = matrix.length;
+        double[][] lower = new double[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column <= row; column++) {
+                double sum = matrix[row][column];
+                for (int k = 0; k < column; k++) {
+                    sum -= lower[row][k] * lower[column][k];
+                }
+                if (row == column) {
+                    if (sum <= 0.0) {
+                        throw new IllegalArgumentException("Factor correlation matrix is not positive definite");
+                    }
+                    lower[row][row] = Math.sqrt(sum);
+                } else {
+                    lower[row][column] = sum / lower[column][column];
+                }
+            }
+        }
+        return lower;
+    }
+}
@@ -0,0 +1,227 @@
+package com.stockmarketmod.model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Preallocated ring of fill records produced by the matching engine.
+ * <p>
+ * Every fill gets a market-wide sequence number and is stored column-wise in
+ * preallocated arrays, so recording a trade does not allocate. Fills are published once a
+ * matching call finishes, and handed to listeners in batches by {@link #flush()}, which the
+ * owner of the books calls after releasing their locks. A record stays readable until
+ * {@link #getCapacity()} newer fills have been written over it.
+ * <p>
+ * Books of one market may trade on different threads, so writes are serialized on the
+ * ring itself and deliveries on a lock of their own. The writer never delivers: a matching
+ * call producing more fills than the listeners have room for doubles the ring instead of
+ * overwriting fills they have not seen.
+ */
+public class FillRing {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    // Replaced as a whole when the ring grows, so readers always see one consistent set of columns
+    private volatile Slots slots;
+    private final List<FillListener> listeners = new CopyOnWriteArrayList<>();
+    private long nextSequence;
+    private volatile long publishedSequence;
+    private volatile long deliveredSequence; // Listeners have seen every fill below this
+    private final Object deliveryLock = new Object();
+    private volatile long gameTick;
+
+    public interface FillListener {
+        /**
+         * Called with the fills numbered {@code fromSequence} (inclusive) to
+         * {@code toSequence} (exclusive). Read them through the ring's accessors.
+         */
+        void onFills(FillRing fills, long fromSequence, long toSequence);
+    }
+
+    public FillRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FillRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Fill ring capacity must be a power of two: " + capacity);
+        }
+        this.slots = new Slots(capacity);
+    }
+
+    private static final class Slots {
+        private final int mask;
+        private final long[] sequences;
+        private final long[] gameTicks;
+        private final String[] symbols;
+        private final double[] prices;
+        private final int[] quantities;
+        private final long[] makerOrderIds;
+        private final long[] takerOrderIds;
+        private final int[] makerAccounts;
+        private final int[] takerAccounts;
+        private final boolean[] takerBuys;
+
+        Slots(int capacity) {
+            this.mask = capacity - 1;
+            this.sequences = new long[capacity];
+            this.gameTicks = new long[capacity];
+            this.symbols = new String[capacity];
+            this.prices = new double[capacity];
+            this.quantities = new int[capacity];
+            this.makerOrderIds = new long[capacity];
+            this.takerOrderIds = new long[capacity];
+            this.makerAccounts = new int[capacity];
+            this.takerAccounts = new int[capacity];
+            this.takerBuys = new boolean[capacity];
+        }
+
+        void copy(Slots from, long sequence) {
+            int source = (int) (sequence & from.mask);
+            int index = (int) (sequence & mask);
+            sequences[index] = from.sequences[source];
+            gameTicks[index] = from.gameTicks[source];
+            symbols[index] = from.symbols[source];
+            prices[index] = from.prices[source];
+            quantities[index] = from.quantities[source];
+            makerOrderIds[index] = from.makerOrderIds[source];
+            takerOrderIds[index] = from.takerOrderIds[source];
+            makerAccounts[index] = from.makerAccounts[source];
+            takerAccounts[index] = from.takerAccounts[source];
+            takerBuys[index] = from.takerBuys[source];
+        }
+    }
+
+    public void addListener(FillListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(FillListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void setGameTick(long gameTick) {
+        this.gameTick = gameTick;
+    }
+
+    // Called under a book's write lock, so it must never run listeners itself
+    synchronized void record(Order maker, Order taker, double price, int quantity) {
+        Slots slots = this.slots;
+        if (nextSequence - deliveredSequence == slots.sequences.length) {
+            slots = grow(slots);
+        }
+        int index = (int) (nextSequence & slots.mask);
+        slots.sequences[index] = nextSequence;
+        slots.gameTicks[index] = gameTick;
+        slots.symbols[index] = taker.getSymbol();
+        slots.prices[index] = price;
+        slots.quantities[index] = quantity;
+        slots.makerOrderIds[index] = maker.getOrderId();
+        slots.takerOrderIds[index] = taker.getOrderId();
+        slots.makerAccounts[index] = maker.getAccountId();
+        slots.takerAccounts[index] = taker.getAccountId();
+        slots.takerBuys[index] = taker.getType() == Order.OrderType.BUY;
+        nextSequence++;
+    }
+
+    // Doubles the ring, keeping every record the old one still held at its sequence
+    private Slots grow(Slots old) {
+        int capacity = old.sequences.length;
+        if (capacity == 1 << 30) {
+            throw new IllegalStateException("Fill ring cannot grow past " + capacity + " undelivered fills");
+        }
+        Slots grown = new Slots(capacity * 2);
+        for (long sequence = Math.max(0L, nextSequence - capacity); sequence < nextSequence; sequence++) {
+            grown.copy(old, sequence);
+        }
+        slots = grown;
+        return grown;
+    }
+
+    // Makes the fills recorded so far visible to other threads and to the next flush
+    synchronized void publish() {
+        publishedSequence = nextSequence;
+    }
+
+    /**
+     * Hands every published fill the listeners have not seen yet to them, on the calling
+     * thread. Callers must not hold a book lock, since listeners may read the market.
+     */
+    void flush() {
+        synchronized (deliveryLock) {
+            long from = deliveredSequence;
+            long to = publishedSequence;
+            if (from == to) {
+                return;
+            }
+            for (FillListener listener : listeners) {
+                listener.onFills(this, from, to);
+            }
+            // Only now may the writer reuse the slots the listeners were reading
+            deliveredSequence = to;
+        }
+    }
+
+    public int getCapacity() {
+        return slots.sequences.length;
+    }
+
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    // Fills below this sequence are complete and safe to read from other threads
+    public long getPublishedSequence() {
+        return publishedSequence;
+    }
+
+    public boolean isAvailable(long sequence) {
+        Slots slots = this.slots;
+        return sequence < nextSequence && slots.sequences[(int) (sequence & slots.mask)] == sequence;
+    }
+
+    public long getGameTick(long sequence) {
+        Slots slots = this.slots;
+        return slots.gameTicks[(int) (sequence & slots.mask)];
+    }
+
+    public String getSymbol(long sequence) {
+        Slots slots = this.slots;
+        return slots.symbols[(int) (sequence & slots.mask)];
+    }
+
+    public double getPrice(long sequence) {
+        Slots slots = this.slots;
+        return slots.prices[(int) (sequence & slots.mask)];
+    }
+
+    public int getQuantity(long sequence) {
+        Slots slots = this.slots;
+        return slots.quantities[(int) (sequence & slots.mask)];
+    }
+
+    public long getMakerOrderId(long sequence) {
+        Slots slots = this.slots;
+        return slots.makerOrderIds[(int) (sequence & slots.mask)];
+    }
+
+    public long getTakerOrderId(long sequence) {
+        Slots slots = this.slots;
+        return slots.takerOrderIds[(int) (sequence & slots.mask)];
+    }
+
+    // Account numbers resolve to players through Market#getPlayerId
+    public int getMakerAccount(long sequence) {
+        Slots slots = this.slots;
+        return slots.makerAccounts[(int) (sequence & slots.mask)];
+    }
+
+    public int getTakerAccount(long sequence) {
+        Slots slots = this.slots;
+        return slots.takerAccounts[(int) (sequence & slots.mask)];
+    }
+
+    public boolean isTakerBuy(long sequence) {
+        Slots slots = this.slots;
+        return slots.takerBuys[(int) (sequence & slots.mask)];
+    }
+}
@@ -4,227 +4,702 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraftforge.common.util.INBTSerializable;
 
 import java.util.*;
-import java.util.stream.Collectors;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of stocks, each with its own order book and pricing state.
+ * <p>
+ * Every book is guarded by its own lock, so different symbols can be traded and read
+ * from different threads at the same time. Reads of a single value such as the current
+ * price try an optimistic read first and only take the read lock if a writer got in
+ * the way. Books returned by {@link #getOrderBooks()} are not locked for the caller.
+ * <p>
+ * Symbols are interned to dense ids, and their pricing state is kept in primitive arrays
+ * indexed by id, so {@link #updatePrices()} reprices every stock in a single array sweep.
+ * Orders never move that model price themselves; it moves on a sweep, or once per stock as a
+ * call auction clears.
+ * The methods taking a symbol look its book up once and then work on the arrays.
+ * <p>
+ * Once a {@link PriceEngine} is attached, the current price of a symbol is its mark price,
+ * so the market quotes the same price as everything else reading the engine.
+ * <p>
+ * Each symbol draws its price noise from its own {@link RandomStream}, derived from the
+ * market seed and the symbol name and saved with the market, so price paths replay exactly
+ * and do not depend on the order in which symbols are repriced.
+ * <p>
+ * A symbol's order book is only created once the symbol is traded or its depth is read.
+ * Until then the symbol is just a few array entries, and reads such as its price or
+ * supply are answered without creating anything.
+ */
 public class Market implements INBTSerializable<CompoundTag> {
-    private final Map<String, OrderBook> orderBooks;
-    private final Map<String, Double> basePrices;
-    private final Map<String, Integer> totalSupply;
-    private final Map<String, Integer> totalDemand;
-    private final Map<String, Double> priceVolatility;
-    private final Random random;
+    private final SymbolTable symbols;         // Books and pricing state, by symbol id
+    private final Map<Long, Order> orderIndex; // Resting orders of every book, by order id
+    private final FillRing fills;              // Trades from every book, in execution order
+    private final AccountRegistry accounts;    // Player accounts shared by every book
+    private final AtomicLong orderIds;         // Last order id handed out by any book
+    private final TimingWheel expiries;        // Ids of orders that carry an expiry tick
+    private final LongConsumer expiredCollector = this::collectExpired;
+    private long[] expiredIds = new long[64];  // Only used while holding the expiries lock
+    private int expiredCount;
+    private final Set<String> auctionSymbols;  // Books that received orders during the current auction
+    private volatile boolean inAuction;
+    private volatile PriceEngine priceEngine; // Source of current prices, if attached
+    private long seed; // Root of every symbol's random stream
+    // Scratch for updatePrices, one page of symbols at a time; only used while holding sweepStamps
+    private final OrderBook[] sweepBooks = new OrderBook[SymbolTable.PAGE_SIZE];
+    private final long[] sweepStamps = new long[SymbolTable.PAGE_SIZE];
+    private final double[] sweepRatios = new double[SymbolTable.PAGE_SIZE];
+    private final double[] sweepImpacts = new double[SymbolTable.PAGE_SIZE];
+    private final double[] sweepDraws = new double[SymbolTable.PAGE_SIZE];
 
     public Market() {
-        this.orderBooks = new HashMap<>();
-        this.basePrices = new HashMap<>();
-        this.totalSupply = new HashMap<>();
-        this.totalDemand = new HashMap<>();
-        this.priceVolatility = new HashMap<>();
-        this.random = new Random();
+        this(new Random().nextLong());
+    }
+
+    public Market(long seed) {
+        this.seed = seed;
+        this.symbols = new SymbolTable(this::newBook);
+        this.orderIndex = new ConcurrentHashMap<>();
+        this.fills = new FillRing();
+        this.accounts = new AccountRegistry();
+        this.orderIds = new AtomicLong();
+        this.expiries = new TimingWheel();
+        this.auctionSymbols = ConcurrentHashMap.newKeySet();
     }
 
     public void registerStock(String symbol, double basePrice, double volatility) {
-        orderBooks.put(symbol, new OrderBook(symbol));
-        basePrices.put(symbol, basePrice);
-        totalSupply.put(symbol, 0);
-        totalDemand.put(symbol, 0);
-        priceVolatility.put(symbol, volatility);
+        registerStock(symbol, basePrice, volatility, OrderBook.DEFAULT_TICK_SIZE);
+    }
+
+    /**
+     * Lists a stock, or resets one that is already listed to the given price and an empty book.
+     */
+    public void registerStock(String symbol, double basePrice, double volatility, double tickSize) {
+        symbols.register(symbol, tickSize, basePrice, volatility, RandomStream.childSeed(seed, symbol));
+    }
+
+    /**
+     * Lists a stock unless it is already listed, in which case only its volatility is updated
+     * and its book and price carry on. Meant for definitions that are reloaded while trading.
+     *
+     * @return true if the stock was newly listed
+     */
+    public boolean listStock(String symbol, double basePrice, double volatility, double tickSize) {
+        synchronized (symbols) {
+            int id = symbols.id(symbol);
+            if (id < 0) {
+                registerStock(symbol, basePrice, volatility, tickSize);
+                return true;
+            }
+            OrderBook orderBook = symbols.existingBook(symbol);
+            long stamp = orderBook != null ? orderBook.lock.writeLock() : 0L;
+            try {
+                symbols.page(id).volatility[SymbolTable.slot(id)] = volatility;
+            } finally {
+                if (orderBook != null) {
+                    orderBook.lock.unlockWrite(stamp);
+                }
+            }
+            return false;
+        }
+    }
+
+    public boolean isListed(String symbol) {
+        return symbols.id(symbol) >= 0;
+    }
+
+    // True once the stock has an order book, i.e. it has been traded or its depth was read
+    public boolean hasOrderBook(String symbol) {
+        return symbols.existingBook(symbol) != null;
+    }
+
+    /**
+     * Creates the stock's order book ahead of the first order, e.g. so it can be quoted.
+     *
+     * @return false if the stock already had a book
+     */
+    public boolean openOrderBook(String symbol) {
+        if (symbols.existingBook(symbol) != null) {
+            return false;
+        }
+        if (symbols.book(symbol) == null) {
+            throw new IllegalArgumentException("Stock " + symbol + " not registered");
+        }
+        return true;
+    }
+
+    public Set<String> getSymbols() {
+        return symbols.symbols();
+    }
+
+    // Fills of the market's books are delivered by the market once the book is unlocked
+    private OrderBook newBook(String symbol, double tickSize) {
+        OrderBook orderBook = new OrderBook(symbol, tickSize, orderIndex, fills, accounts, orderIds);
+        orderBook.deliversFills = false;
+        return orderBook;
     }
 
     public void placeOrder(Order order) {
         String symbol = order.getSymbol();
-        OrderBook orderBook = orderBooks.get(symbol);
+        OrderBook orderBook = symbols.book(symbol);
+        if (orderBook == null) {
+            throw new IllegalArgumentException("Stock " + symbol + " not registered");
+        }
+
+        long stamp = orderBook.lock.writeLock();
+        try {
+            // Add order to order book
+            if (inAuction) {
+                collectForAuction(orderBook, order);
+                return;
+            }
+            orderBook.addOrder(order);
+            scheduleExpiry(order);
+        } finally {
+            orderBook.lock.unlockWrite(stamp);
+        }
+        fills.flush();
+    }
+
+    /**
+     * Parks a stop or take-profit order with its book. It is released into matching once a
+     * trade reaches its trigger price, and can be cancelled by its order id until then.
+     */
+    public void placeTrigger(TriggerOrder trigger) {
+        String symbol = trigger.getOrder().getSymbol();
+        OrderBook orderBook = symbols.book(symbol);
         if (orderBook == null) {
             throw new IllegalArgumentException("Stock " + symbol + " not registered");
         }
 
-        // Update supply/demand
-        if (order.getType() == Order.OrderType.BUY) {
-            totalDemand.merge(symbol, order.getQuantity(), Integer::sum);
-        } else {
-            totalSupply.merge(symbol, order.getQuantity(), Integer::sum);
+        long stamp = orderBook.lock.writeLock();
+        try {
+            orderBook.placeTrigger(trigger);
+            // Expiring the order's id cancels the trigger, whatever order it would release
+            scheduleIndexedExpiry(trigger.getOrder());
+        } finally {
+            orderBook.lock.unlockWrite(stamp);
         }
+        fills.flush();
+    }
+
+    /**
+     * Starts collecting orders for a call auction. Until {@link #endAuction()} is called,
+     * placed, added and amended orders rest in their books without matching.
+     */
+    public void beginAuction() {
+        inAuction = true;
+    }
 
-        // Add order to order book
-        orderBook.addOrder(order);
+    /**
+     * Uncrosses every book that received orders since {@link #beginAuction()} at its own
+     * single clearing price, then reprices each of those stocks once.
+     *
+     * @return the total quantity executed across all books
+     */
+    public long endAuction() {
+        inAuction = false;
+        long executed = 0;
+        // Orders are collected under the book lock, so checking each book under its lock
+        // catches any order that saw the auction flag just before it was cleared
+        int size = symbols.size();
+        for (int id = 0; id < size; id++) {
+            OrderBook orderBook = symbols.page(id).books.get(SymbolTable.slot(id));
+            if (orderBook == null) {
+                // Collecting an order creates the book first, so a stock without one has none
+                continue;
+            }
+            long stamp = orderBook.lock.writeLock();
+            try {
+                if (auctionSymbols.remove(orderBook.getSymbol())) {
+                    executed += orderBook.uncross();
+                    reprice(orderBook);
+                }
+            } finally {
+                orderBook.lock.unlockWrite(stamp);
+            }
+        }
+        fills.flush();
+        return executed;
+    }
 
-        // Update price based on market conditions
-        updatePrice(symbol);
+    public boolean isInAuction() {
+        return inAuction;
+    }
+
+    private void collectForAuction(OrderBook orderBook, Order order) {
+        orderBook.queueOrder(order);
+        scheduleExpiry(order);
+        auctionSymbols.add(order.getSymbol());
+    }
+
+    // Immediate orders are done trading by the time they are placed, so only resting ones can expire
+    private void scheduleExpiry(Order order) {
+        if (!order.isImmediate()) {
+            scheduleIndexedExpiry(order);
+        }
+    }
+
+    // For orders held in the index, resting or pending as a trigger, whatever their time in force
+    private void scheduleIndexedExpiry(Order order) {
+        if (order.getExpiryTick() > 0) {
+            expiries.schedule(order.getOrderId(), order.getExpiryTick());
+        }
     }
 
     public void updatePrice(String symbol) {
-        OrderBook orderBook = orderBooks.get(symbol);
-        double basePrice = basePrices.get(symbol);
-        double volatility = priceVolatility.get(symbol);
-        
-        // Calculate supply/demand ratio
-        int supply = totalSupply.get(symbol);
-        int demand = totalDemand.get(symbol);
-        double ratio = demand > 0 ? (double) supply / demand : 1.0;
-
-        // Calculate volume impact
-        int volume = orderBook.getVolume();
-        double volumeImpact = Math.log1p(volume) / 100.0;
-
-        // Calculate price adjustment
-        double priceAdjustment = (ratio - 1.0) * volatility;
-        double randomFactor = 1.0 + (random.nextDouble() - 0.5) * volatility;
-        
-        // Update base price
-        double newBasePrice = basePrice * (1.0 + priceAdjustment + volumeImpact) * randomFactor;
-        basePrices.put(symbol, newBasePrice);
+        OrderBook orderBook = symbols.existingBook(symbol);
+        if (orderBook == null) {
+            synchronized (symbols) {
+                orderBook = symbols.existingBook(symbol);
+                if (orderBook == null) {
+                    int id = symbols.id(symbol);
+                    if (id < 0) {
+                        throw new IllegalArgumentException("Stock " + symbol + " not registered");
+                    }
+                    // Nothing rests or has traded yet, so only the random part moves the price
+                    SymbolTable.Page page = symbols.page(id);
+                    int slot = SymbolTable.slot(id);
+                    page.basePrice[slot] = BatchPricer.price(page.basePrice[slot], page.volatility[slot], 1.0, 0.0, nextDraw(page, slot));
+                    return;
+                }
+            }
+        }
+        long stamp = orderBook.lock.writeLock();
+        try {
+            reprice(orderBook);
+        } finally {
+            orderBook.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Reprices every registered stock, one page of the symbol table at a time. The books of
+     * a page are locked in id order, their ratios, volume impacts and random draws gathered
+     * into arrays, and the whole page is then repriced by {@link BatchPricer} in one pass.
+     * Stocks without a book are covered by holding the symbol table's monitor for the page.
+     */
+    public void updatePrices() {
+        synchronized (sweepStamps) {
+            int size = symbols.size();
+            SymbolTable.Page[] pages = symbols.pages();
+            for (int first = 0; first < size; first += SymbolTable.PAGE_SIZE) {
+                SymbolTable.Page page = pages[first >>> SymbolTable.PAGE_BITS];
+                int count = Math.min(size - first, SymbolTable.PAGE_SIZE);
+                // Other callers only ever hold one book lock, and never take the monitor while
+                // holding one, so taking several in id order under the monitor is safe
+                synchronized (symbols) {
+                    int locked = 0;
+                    try {
+                        for (; locked < count; locked++) {
+                            OrderBook orderBook = page.books.get(locked);
+                            sweepBooks[locked] = orderBook;
+                            if (orderBook == null) {
+                                sweepRatios[locked] = 1.0;
+                                sweepImpacts[locked] = 0.0;
+                            } else {
+                                sweepStamps[locked] = orderBook.lock.writeLock();
+                                sweepRatios[locked] = BatchPricer.ratio(orderBook.getRestingSellQuantity(), orderBook.getRestingBuyQuantity());
+                                sweepImpacts[locked] = BatchPricer.volumeImpact(orderBook.getVolume());
+                            }
+                            sweepDraws[locked] = nextDraw(page, locked);
+                        }
+                        BatchPricer.reprice(page.basePrice, page.volatility, sweepRatios, sweepImpacts, sweepDraws, 0, count);
+                    } finally {
+                        for (int slot = 0; slot < locked; slot++) {
+                            if (sweepBooks[slot] != null) {
+                                sweepBooks[slot].lock.unlockWrite(sweepStamps[slot]);
+                                sweepBooks[slot] = null;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Caller holds the book's write lock
+    private void reprice(OrderBook orderBook) {
+        SymbolTable.Page page = symbols.page(orderBook.symbolId);
+        int slot = SymbolTable.slot(orderBook.symbolId);
+        // Supply/demand ratio from the quantity resting on each side, plus the volume impact
+        double ratio = BatchPricer.ratio(orderBook.getRestingSellQuantity(), orderBook.getRestingBuyQuantity());
+        double volumeImpact = BatchPricer.volumeImpact(orderBook.getVolume());
+        page.basePrice[slot] = BatchPricer.price(page.basePrice[slot], page.volatility[slot], ratio, volumeImpact, nextDraw(page, slot));
+    }
+
+    // Caller holds the book's write lock
+    private static double nextDraw(SymbolTable.Page page, int slot) {
+        long state = RandomStream.advance(page.randomState[slot]);
+        page.randomState[slot] = state;
+        return RandomStream.doubleAt(state);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public FillRing getFills() {
+        return fills;
+    }
+
+    public void addFillListener(FillRing.FillListener listener) {
+        fills.addListener(listener);
+    }
+
+    public void removeFillListener(FillRing.FillListener listener) {
+        fills.removeListener(listener);
+    }
+
+    /**
+     * Advances market time: the tick is stamped onto every fill recorded from now on, and
+     * orders whose expiry tick has been reached are cancelled. Meant to be called every tick.
+     *
+     * @return the number of orders that expired
+     */
+    public int setGameTick(long gameTick) {
+        fills.setGameTick(gameTick);
+        long[] expired;
+        // Placement schedules expiries while holding a book lock, so the wheel's monitor is
+        // released before any book is locked to cancel what it handed out
+        synchronized (expiries) {
+            expiredCount = 0;
+            expiries.advance(gameTick, expiredCollector);
+            if (expiredCount == 0) {
+                return 0;
+            }
+            expired = Arrays.copyOf(expiredIds, expiredCount);
+        }
+        int cancelled = 0;
+        for (long orderId : expired) {
+            // Orders that already traded or were cancelled are simply not found
+            if (cancelOrder(orderId)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    private void collectExpired(long orderId) {
+        if (expiredCount == expiredIds.length) {
+            expiredIds = Arrays.copyOf(expiredIds, expiredCount * 2);
+        }
+        expiredIds[expiredCount++] = orderId;
+    }
+
+    public UUID getPlayerId(int accountId) {
+        return accounts.playerFor(accountId);
+    }
+
+    public Order getOrder(long orderId) {
+        return orderIndex.get(orderId);
+    }
+
+    public boolean cancelOrder(long orderId) {
+        Order order = orderIndex.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        OrderBook orderBook = symbols.book(order.getSymbol());
+        long stamp = orderBook.lock.writeLock();
+        try {
+            // The book re-checks the id, in case the order traded away before we got the lock
+            return orderBook.cancelOrder(orderId);
+        } finally {
+            orderBook.lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean amendOrder(long orderId, double newPrice, int newQuantity) {
+        Order order = orderIndex.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        OrderBook orderBook = symbols.book(order.getSymbol());
+        boolean amended;
+        long stamp = orderBook.lock.writeLock();
+        try {
+            if (inAuction) {
+                // Like a placed order, the amended one waits for the auction to uncross it
+                if (!orderBook.amendQueuedOrder(orderId, newPrice, newQuantity)) {
+                    return false;
+                }
+                auctionSymbols.add(orderBook.getSymbol());
+                return true;
+            }
+            amended = orderBook.amendOrder(orderId, newPrice, newQuantity);
+        } finally {
+            orderBook.lock.unlockWrite(stamp);
+        }
+        fills.flush();
+        return amended;
+    }
+
+    /**
+     * Makes the engine's mark the current price of every symbol it has one for. The engine is
+     * only read; it still has to be added as a fill listener to see this market's trades.
+     */
+    public void setPriceEngine(PriceEngine priceEngine) {
+        this.priceEngine = priceEngine;
     }
 
     public double getCurrentPrice(String symbol) {
-        OrderBook orderBook = orderBooks.get(symbol);
+        PriceEngine engine = priceEngine;
+        if (engine != null && engine.hasMarkPrice(symbol)) {
+            return engine.getMarkPrice(symbol);
+        }
+        OrderBook orderBook = symbols.existingBook(symbol);
         if (orderBook == null) {
-            throw new IllegalArgumentException("Stock " + symbol + " not registered");
+            synchronized (symbols) {
+                orderBook = symbols.existingBook(symbol);
+                if (orderBook == null) {
+                    int id = symbols.id(symbol);
+                    if (id < 0) {
+                        throw new IllegalArgumentException("Stock " + symbol + " not registered");
+                    }
+                    // Never traded, so the model price is all there is
+                    return symbols.page(id).basePrice[SymbolTable.slot(id)];
+                }
+            }
+        }
+        // The base price is written under the book's lock too, so both are read under one stamp
+        SymbolTable.Page page = symbols.page(orderBook.symbolId);
+        int slot = SymbolTable.slot(orderBook.symbolId);
+        long stamp = orderBook.lock.tryOptimisticRead();
+        double lastTradePrice = orderBook.getLastTradePrice();
+        double basePrice = page.basePrice[slot];
+        if (!orderBook.lock.validate(stamp)) {
+            stamp = orderBook.lock.readLock();
+            try {
+                lastTradePrice = orderBook.getLastTradePrice();
+                basePrice = page.basePrice[slot];
+            } finally {
+                orderBook.lock.unlockRead(stamp);
+            }
         }
-        return orderBook.getLastTradePrice() > 0 ? orderBook.getLastTradePrice() : basePrices.get(symbol);
+        return lastTradePrice > 0 ? lastTradePrice : basePrice;
     }
 
     public MarketDepth getMarketDepth(String symbol) {
-        OrderBook orderBook = orderBooks.get(symbol);
+        return getMarketDepth(symbol, Integer.MAX_VALUE);
+    }
+
+    public MarketDepth getMarketDepth(String symbol, int maxLevels) {
+        OrderBook orderBook = symbols.book(symbol);
         if (orderBook == null) {
             throw new IllegalArgumentException("Stock " + symbol + " not registered");
         }
 
-        List<Order> buyOrders = orderBook.getBuyOrders();
-        List<Order> sellOrders = orderBook.getSellOrders();
-
-        return new MarketDepth(
-            aggregateOrders(buyOrders),
-            aggregateOrders(sellOrders)
-        );
+        // Levels already carry their aggregated quantity, so only the top levels are visited.
+        // Walking the levels is not safe against a concurrent writer, hence the read lock.
+        long stamp = orderBook.lock.readLock();
+        try {
+            return new MarketDepth(
+                orderBook.getBuyLevels(maxLevels),
+                orderBook.getSellLevels(maxLevels)
+            );
+        } finally {
+            orderBook.lock.unlockRead(stamp);
+        }
     }
 
-    private List<PriceLevel> aggregateOrders(List<Order> orders) {
-        Map<Double, Integer> aggregated = orders.stream()
-            .collect(Collectors.groupingBy(
-                Order::getPrice,
-                Collectors.summingInt(Order::getQuantity)
-            ));
+    /**
+     * Copies the top levels of a book into a reusable snapshot. Nothing is copied when the
+     * snapshot already holds the current version of that book.
+     *
+     * @return the book version the snapshot now reflects
+     */
+    public long copyDepth(String symbol, DepthSnapshot snapshot) {
+        OrderBook orderBook = symbols.book(symbol);
+        if (orderBook == null) {
+            throw new IllegalArgumentException("Stock " + symbol + " not registered");
+        }
+        long stamp = orderBook.lock.tryOptimisticRead();
+        long version = orderBook.getVersion();
+        if (snapshot.source == orderBook && snapshot.version == version && orderBook.lock.validate(stamp)) {
+            return version;
+        }
 
-        // Sort buy orders by price descending, sell orders by price ascending
-        Comparator<Map.Entry<Double, Integer>> comparator = Map.Entry.<Double, Integer>comparingByKey();
-        if (orders.stream().findFirst().map(o -> o.getType() == Order.OrderType.BUY).orElse(false)) {
-            comparator = comparator.reversed();
+        stamp = orderBook.lock.readLock();
+        try {
+            version = orderBook.getVersion();
+            if (snapshot.source != orderBook || snapshot.version != version) {
+                snapshot.bidLevels = orderBook.copyBuyLevels(snapshot.bidPrices, snapshot.bidQuantities, snapshot.capacity);
+                snapshot.askLevels = orderBook.copySellLevels(snapshot.askPrices, snapshot.askQuantities, snapshot.capacity);
+                snapshot.lastTradePrice = orderBook.getLastTradePrice();
+                snapshot.source = orderBook;
+                snapshot.version = version;
+            }
+            return version;
+        } finally {
+            orderBook.lock.unlockRead(stamp);
         }
+    }
 
-        return aggregated.entrySet().stream()
-            .sorted(comparator)
-            .map(entry -> new PriceLevel(entry.getKey(), entry.getValue()))
-            .collect(Collectors.toList());
+    public long getBookVersion(String symbol) {
+        OrderBook orderBook = symbols.existingBook(symbol);
+        if (orderBook == null) {
+            if (symbols.id(symbol) < 0) {
+                throw new IllegalArgumentException("Stock " + symbol + " not registered");
+            }
+            return 0L;
+        }
+        long stamp = orderBook.lock.tryOptimisticRead();
+        long version = orderBook.getVersion();
+        if (!orderBook.lock.validate(stamp)) {
+            stamp = orderBook.lock.readLock();
+            try {
+                version = orderBook.getVersion();
+            } finally {
+                orderBook.lock.unlockRead(stamp);
+            }
+        }
+        return version;
     }
 
     public Map<String, OrderBook> getOrderBooks() {
-        return Collections.unmodifiableMap(orderBooks);
+        return symbols.books();
     }
 
     public int getTotalSupply(String symbol) {
-        OrderBook orderBook = orderBooks.get(symbol);
+        OrderBook orderBook = symbols.existingBook(symbol);
         if (orderBook == null) return 0;
-        
-        return orderBook.getSellOrders().stream()
-            .mapToInt(Order::getQuantity)
-            .sum();
+        return (int) restingQuantity(orderBook, Order.OrderType.SELL);
     }
 
     public int getTotalDemand(String symbol) {
-        OrderBook orderBook = orderBooks.get(symbol);
+        OrderBook orderBook = symbols.existingBook(symbol);
         if (orderBook == null) return 0;
-        
-        return orderBook.getBuyOrders().stream()
-            .mapToInt(Order::getQuantity)
-            .sum();
+        return (int) restingQuantity(orderBook, Order.OrderType.BUY);
+    }
+
+    private static long restingQuantity(OrderBook orderBook, Order.OrderType side) {
+        long stamp = orderBook.lock.tryOptimisticRead();
+        long quantity = side == Order.OrderType.BUY ? orderBook.getRestingBuyQuantity() : orderBook.getRestingSellQuantity();
+        if (!orderBook.lock.validate(stamp)) {
+            stamp = orderBook.lock.readLock();
+            try {
+                quantity = side == Order.OrderType.BUY ? orderBook.getRestingBuyQuantity() : orderBook.getRestingSellQuantity();
+            } finally {
+                orderBook.lock.unlockRead(stamp);
+            }
+        }
+        return quantity;
     }
 
     public void addOrder(Order order) {
-        OrderBook orderBook = orderBooks.get(order.getSymbol());
+        OrderBook orderBook = symbols.book(order.getSymbol());
         if (orderBook == null) {
             throw new IllegalArgumentException("Stock " + order.getSymbol() + " not registered");
         }
         
-        if (order.getType() == Order.OrderType.BUY) {
-            orderBook.addBuyOrder(order);
-            totalDemand.merge(order.getSymbol(), order.getQuantity(), Integer::sum);
-        } else {
-            orderBook.addSellOrder(order);
-            totalSupply.merge(order.getSymbol(), order.getQuantity(), Integer::sum);
+        long stamp = orderBook.lock.writeLock();
+        try {
+            if (inAuction) {
+                collectForAuction(orderBook, order);
+                return;
+            }
+            if (order.getType() == Order.OrderType.BUY) {
+                orderBook.addBuyOrder(order);
+            } else {
+                orderBook.addSellOrder(order);
+            }
+            scheduleExpiry(order);
+        } finally {
+            orderBook.lock.unlockWrite(stamp);
         }
-        
-        // Update price based on new order
-        updatePrice(order.getSymbol());
+        fills.flush();
     }
 
     @Override
     public CompoundTag serializeNBT() {
         CompoundTag tag = new CompoundTag();
+
+        // Serialize accounts and the order id sequence; books refer to both
+        tag.putLongArray("accounts", accounts.toLongArray());
+        tag.putLong("lastOrderId", orderIds.get());
+        tag.putLong("seed", seed);
         
-        // Serialize order books
+        // Serialize the listed stocks and the order books created so far
         CompoundTag orderBooksTag = new CompoundTag();
-        orderBooks.forEach((symbol, book) -> orderBooksTag.put(symbol, book.serializeNBT()));
-        tag.put("orderBooks", orderBooksTag);
-
-        // Serialize base prices
         CompoundTag basePricesTag = new CompoundTag();
-        basePrices.forEach((symbol, price) -> basePricesTag.putDouble(symbol, price));
-        tag.put("basePrices", basePricesTag);
-
-        // Serialize supply/demand
-        CompoundTag supplyTag = new CompoundTag();
-        totalSupply.forEach((symbol, supply) -> supplyTag.putInt(symbol, supply));
-        tag.put("totalSupply", supplyTag);
-
-        CompoundTag demandTag = new CompoundTag();
-        totalDemand.forEach((symbol, demand) -> demandTag.putInt(symbol, demand));
-        tag.put("totalDemand", demandTag);
-
-        // Serialize volatility
         CompoundTag volatilityTag = new CompoundTag();
-        priceVolatility.forEach((symbol, volatility) -> volatilityTag.putDouble(symbol, volatility));
+        CompoundTag randomStatesTag = new CompoundTag();
+        CompoundTag tickSizesTag = new CompoundTag();
+        synchronized (symbols) {
+            int size = symbols.size();
+            for (int id = 0; id < size; id++) {
+                SymbolTable.Page page = symbols.page(id);
+                int slot = SymbolTable.slot(id);
+                String symbol = page.symbols[slot];
+                OrderBook book = page.books.get(slot);
+                long stamp = book != null ? book.lock.readLock() : 0L;
+                try {
+                    if (book != null) {
+                        orderBooksTag.put(symbol, book.serializeNBT());
+                    }
+                    basePricesTag.putDouble(symbol, page.basePrice[slot]);
+                    volatilityTag.putDouble(symbol, page.volatility[slot]);
+                    randomStatesTag.putLong(symbol, page.randomState[slot]);
+                    tickSizesTag.putDouble(symbol, page.tickSize[slot]);
+                } finally {
+                    if (book != null) {
+                        book.lock.unlockRead(stamp);
+                    }
+                }
+            }
+        }
+        tag.put("orderBooks", orderBooksTag);
+        tag.put("basePrices", basePricesTag);
         tag.put("priceVolatility", volatilityTag);
+        tag.put("randomStates", randomStatesTag);
+        tag.put("tickSizes", tickSizesTag);
 
         return tag;
     }
 
     @Override
     public void deserializeNBT(CompoundTag tag) {
-        // Deserialize order books
-        CompoundTag orderBooksTag = tag.getCompound("orderBooks");
-        orderBooks.clear();
-        for (String symbol : orderBooksTag.getAllKeys()) {
-            OrderBook book = new OrderBook(symbol);
-            book.deserializeNBT(orderBooksTag.getCompound(symbol));
-            orderBooks.put(symbol, book);
+        // Deserialize accounts first so the books can resolve their orders' players
+        accounts.fromLongArray(tag.getLongArray("accounts"));
+        orderIds.set(tag.getLong("lastOrderId"));
+        if (tag.contains("seed")) {
+            seed = tag.getLong("seed");
         }
 
-        // Deserialize base prices
+        // Deserialize the listed stocks, then the books that had been created
+        CompoundTag orderBooksTag = tag.getCompound("orderBooks");
         CompoundTag basePricesTag = tag.getCompound("basePrices");
-        basePrices.clear();
-        for (String symbol : basePricesTag.getAllKeys()) {
-            basePrices.put(symbol, basePricesTag.getDouble(symbol));
-        }
-
-        // Deserialize supply/demand
-        CompoundTag supplyTag = tag.getCompound("totalSupply");
-        totalSupply.clear();
-        for (String symbol : supplyTag.getAllKeys()) {
-            totalSupply.put(symbol, supplyTag.getInt(symbol));
+        CompoundTag volatilityTag = tag.getCompound("priceVolatility");
+        CompoundTag randomStatesTag = tag.getCompound("randomStates");
+        CompoundTag tickSizesTag = tag.getCompound("tickSizes");
+        Set<String> listed = new LinkedHashSet<>(basePricesTag.getAllKeys());
+        listed.addAll(orderBooksTag.getAllKeys());
+        symbols.clear();
+        orderIndex.clear();
+        for (String symbol : listed) {
+            CompoundTag bookTag = orderBooksTag.getCompound(symbol);
+            // Older saves keep the tick size only in the book
+            double tickSize = tickSizesTag.contains(symbol) ? tickSizesTag.getDouble(symbol)
+                : bookTag.contains("tickSize") ? bookTag.getDouble("tickSize") : OrderBook.DEFAULT_TICK_SIZE;
+            // Saves from before per-symbol streams start each symbol's stream afresh
+            long randomState = randomStatesTag.contains(symbol) ? randomStatesTag.getLong(symbol) : RandomStream.childSeed(seed, symbol);
+            symbols.register(symbol, tickSize, basePricesTag.getDouble(symbol), volatilityTag.getDouble(symbol), randomState);
+            if (orderBooksTag.contains(symbol)) {
+                OrderBook book = newBook(symbol, tickSize);
+                book.deserializeNBT(bookTag);
+                symbols.restoreBook(book);
+            }
         }
 
-        CompoundTag demandTag = tag.getCompound("totalDemand");
-        totalDemand.clear();
-        for (String symbol : demandTag.getAllKeys()) {
-            totalDemand.put(symbol, demandTag.getInt(symbol));
-        }
+        // Supply and demand are counted by the books as their orders are restored; older saves
+        // also carry "totalSupply"/"totalDemand", which are no longer read
 
-        // Deserialize volatility
-        CompoundTag volatilityTag = tag.getCompound("priceVolatility");
-        priceVolatility.clear();
-        for (String symbol : volatilityTag.getAllKeys()) {
-            priceVolatility.put(symbol, volatilityTag.getDouble(symbol));
-        }
+        // Expiries are kept on the orders themselves, so the wheel is rebuilt from the index
+        expiries.clear();
+        orderIndex.values().forEach(this::scheduleIndexedExpiry);
     }
 
     public static class MarketDepth {
@@ -248,10 +723,16 @@ public class Market implements INBTSerializable<CompoundTag> {
     public static class PriceLevel {
         private final double price;
         private final int quantity;
+        private final int orderCount;
 
         public PriceLevel(double price, int quantity) {
+            this(price, quantity, 1);
+        }
+
+        public PriceLevel(double price, int quantity, int orderCount) {
             this.price = price;
             this.quantity = quantity;
+            this.orderCount = orderCount;
         }
 
         public double getPrice() {
@@ -261,5 +742,69 @@ public class Market implements INBTSerializable<CompoundTag> {
         public int getQuantity() {
             return quantity;
         }
+
+        public int getOrderCount() {
+            return orderCount;
+        }
+    }
+
+    /**
+     * Caller-owned buffers for the top of a book, refilled in place by {@link Market#copyDepth}.
+     */
+    public static class DepthSnapshot {
+        private final int capacity;
+        private final double[] bidPrices;
+        private final long[] bidQuantities;
+        private final double[] askPrices;
+        private final long[] askQuantities;
+        private int bidLevels;
+        private int askLevels;
+        private double lastTradePrice;
+        private OrderBook source;
+        private long version = -1;
+
+        public DepthSnapshot(int capacity) {
+            this.capacity = capacity;
+            this.bidPrices = new double[capacity];
+            this.bidQuantities = new long[capacity];
+            this.askPrices = new double[capacity];
+            this.askQuantities = new long[capacity];
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public int getBidLevels() {
+            return bidLevels;
+        }
+
+        public int getAskLevels() {
+            return askLevels;
+        }
+
+        public double getBidPrice(int level) {
+            return bidPrices[level];
+        }
+
+        public long getBidQuantity(int level) {
+            return bidQuantities[level];
+        }
+
+        public double getAskPrice(int level) {
+            return askPrices[level];
+        }
+
+        public long getAskQuantity(int level) {
+            return askQuantities[level];
+        }
+
+        public double getLastTradePrice() {
+            return lastTradePrice;
+        }
+
+        public long getVersion() {
+            return version;
+        }
     }
 } 
\ No newline at end of file
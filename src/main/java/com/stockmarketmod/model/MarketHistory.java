@@ -5,53 +5,85 @@ import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
 import net.minecraftforge.common.util.INBTSerializable;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Recent price points of every tracked symbol.
+ * <p>
+ * Each symbol keeps its points in a {@link Series}, a ring of primitive price and timestamp
+ * arrays. The arrays start small and double as points arrive, up to the capacity, so a
+ * symbol that was just looked at costs little; once the ring is full, appending a point is
+ * constant time and never allocates. Points are read in place through the series, or copied into buffers
+ * the caller owns. In NBT a series is one packed long array of timestamp and price bits.
+ */
 public class MarketHistory implements INBTSerializable<CompoundTag> {
-    private static final int MAX_HISTORY_SIZE = 100;
-    private final Map<String, List<PricePoint>> history = new HashMap<>();
+    public static final int DEFAULT_CAPACITY = 10_000;
 
-    public void addPricePoint(String symbol, double price, long timestamp) {
-        history.computeIfAbsent(symbol, k -> new ArrayList<>()).add(new PricePoint(price, timestamp));
-        
-        // Trim history if it gets too large
-        List<PricePoint> points = history.get(symbol);
-        if (points.size() > MAX_HISTORY_SIZE) {
-            points.remove(0);
+    private final Map<String, Series> history = new ConcurrentHashMap<>();
+    private volatile int capacity;
+
+    public MarketHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MarketHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Changes how many points every symbol keeps. Shrinking drops the oldest points.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("History capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        for (Series series : history.values()) {
+            series.resize(capacity);
         }
     }
 
-    public List<PricePoint> getHistory(String symbol) {
-        return new ArrayList<>(history.getOrDefault(symbol, new ArrayList<>()));
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Points are expected in timestamp order
+    public void addPricePoint(String symbol, double price, long timestamp) {
+        history.computeIfAbsent(symbol, k -> new Series(capacity)).add(price, timestamp);
+    }
+
+    // Starts recording a symbol; untracked symbols are only recorded once a point is added
+    public void track(String symbol) {
+        history.computeIfAbsent(symbol, k -> new Series(capacity));
+    }
+
+    public boolean isTracked(String symbol) {
+        return history.containsKey(symbol);
+    }
+
+    /**
+     * The symbol's points, oldest first, or null if the symbol is not tracked. The series is
+     * read-only to callers and keeps moving as points are added.
+     */
+    public Series getSeries(String symbol) {
+        return history.get(symbol);
     }
 
     public double getAveragePrice(String symbol, int points) {
-        List<PricePoint> history = getHistory(symbol);
-        if (history.isEmpty()) return 0.0;
-        
-        points = Math.min(points, history.size());
-        double sum = 0.0;
-        for (int i = history.size() - 1; i >= history.size() - points; i--) {
-            sum += history.get(i).price;
-        }
-        return sum / points;
+        Series series = history.get(symbol);
+        return series == null ? 0.0 : series.getAveragePrice(points);
     }
 
     @Override
     public CompoundTag serializeNBT() {
         CompoundTag tag = new CompoundTag();
-        for (Map.Entry<String, List<PricePoint>> entry : history.entrySet()) {
-            ListTag pricePointsList = new ListTag();
-            for (PricePoint point : entry.getValue()) {
-                CompoundTag pointTag = new CompoundTag();
-                pointTag.putDouble("price", point.price);
-                pointTag.putLong("timestamp", point.timestamp);
-                pricePointsList.add(pointTag);
-            }
-            tag.put(entry.getKey(), pricePointsList);
+        for (Map.Entry<String, Series> entry : history.entrySet()) {
+            tag.putLongArray(entry.getKey(), entry.getValue().pack());
         }
         return tag;
     }
@@ -60,26 +92,188 @@ public class MarketHistory implements INBTSerializable<CompoundTag> {
     public void deserializeNBT(CompoundTag tag) {
         history.clear();
         for (String key : tag.getAllKeys()) {
-            ListTag pricePointsList = tag.getList(key, Tag.TAG_COMPOUND);
-            List<PricePoint> points = new ArrayList<>();
-            for (int i = 0; i < pricePointsList.size(); i++) {
-                CompoundTag pointTag = pricePointsList.getCompound(i);
-                points.add(new PricePoint(
-                    pointTag.getDouble("price"),
-                    pointTag.getLong("timestamp")
-                ));
+            Series series = new Series(capacity);
+            if (tag.contains(key, Tag.TAG_LIST)) {
+                // Saves from before packed series keep one compound per point
+                ListTag pricePointsList = tag.getList(key, Tag.TAG_COMPOUND);
+                for (int i = 0; i < pricePointsList.size(); i++) {
+                    CompoundTag pointTag = pricePointsList.getCompound(i);
+                    series.add(pointTag.getDouble("price"), pointTag.getLong("timestamp"));
+                }
+            } else {
+                series.unpack(tag.getLongArray(key));
             }
-            history.put(key, points);
+            history.put(key, series);
         }
     }
 
-    public static class PricePoint {
-        public final double price;
-        public final long timestamp;
+    /**
+     * One symbol's ring of price points. Index 0 is the oldest point still kept. Appends come
+     * from the server thread, reads may come from any thread and see a consistent ring.
+     */
+    public static final class Series {
+        private static final int INITIAL_LENGTH = 64;
+
+        private double[] prices;
+        private long[] timestamps;
+        private int capacity; // The arrays grow up to this many points
+        private int start;    // Slot of the oldest point
+        private int size;
+
+        private Series(int capacity) {
+            this.capacity = capacity;
+            this.prices = new double[Math.min(INITIAL_LENGTH, capacity)];
+            this.timestamps = new long[prices.length];
+        }
+
+        private synchronized void add(double price, long timestamp) {
+            if (size == prices.length && size < capacity) {
+                // The ring only wraps once it has reached its capacity, so the points are in order
+                int length = (int) Math.min((long) size * 2, capacity);
+                prices = Arrays.copyOf(prices, length);
+                timestamps = Arrays.copyOf(timestamps, length);
+            }
+            int length = prices.length;
+            int slot = start + size;
+            if (slot >= length) {
+                slot -= length;
+            }
+            prices[slot] = price;
+            timestamps[slot] = timestamp;
+            if (size < length) {
+                size++;
+            } else if (++start == length) {
+                // Full, so the new point took the oldest one's slot
+                start = 0;
+            }
+        }
+
+        private synchronized void resize(int capacity) {
+            int kept = Math.min(size, capacity);
+            int length = Math.max(kept, Math.min(INITIAL_LENGTH, capacity));
+            double[] newPrices = new double[length];
+            long[] newTimestamps = new long[length];
+            copy(size - kept, newPrices, newTimestamps, 0, kept);
+            prices = newPrices;
+            timestamps = newTimestamps;
+            this.capacity = capacity;
+            start = 0;
+            size = kept;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        public synchronized int getCapacity() {
+            return capacity;
+        }
+
+        public synchronized double getPrice(int index) {
+            return prices[slot(index)];
+        }
+
+        public synchronized long getTimestamp(int index) {
+            return timestamps[slot(index)];
+        }
+
+        // The newest price, or 0.0 if there is none yet
+        public synchronized double getLatestPrice() {
+            return size == 0 ? 0.0 : prices[slot(size - 1)];
+        }
+
+        private int slot(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of " + size + " points");
+            }
+            int slot = start + index;
+            return slot >= prices.length ? slot - prices.length : slot;
+        }
+
+        /**
+         * Copies the points with {@code fromTime <= timestamp < toTime}, oldest first, into the
+         * given buffers, as many as fit. Either buffer may be null.
+         *
+         * @return the number of points copied
+         */
+        public synchronized int copyRange(long fromTime, long toTime, double[] pricesOut, long[] timestampsOut) {
+            int first = firstAtOrAfter(fromTime);
+            int end = firstAtOrAfter(toTime);
+            int room = Math.min(pricesOut != null ? pricesOut.length : Integer.MAX_VALUE,
+                timestampsOut != null ? timestampsOut.length : Integer.MAX_VALUE);
+            int count = Math.min(Math.max(end - first, 0), room);
+            copy(first, pricesOut, timestampsOut, 0, count);
+            return count;
+        }
+
+        /**
+         * Copies the newest {@code count} points, or all of them if there are fewer, oldest
+         * first, into the given buffers starting at {@code offset}. Either buffer may be null.
+         *
+         * @return the number of points copied
+         */
+        public synchronized int copyLatest(int count, double[] pricesOut, long[] timestampsOut, int offset) {
+            count = Math.min(count, size);
+            copy(size - count, pricesOut, timestampsOut, offset, count);
+            return count;
+        }
+
+        public synchronized double getAveragePrice(int points) {
+            if (size == 0) return 0.0;
+            points = Math.min(points, size);
+            double sum = 0.0;
+            for (int index = size - points; index < size; index++) {
+                sum += prices[slot(index)];
+            }
+            return sum / points;
+        }
+
+        // Copies count points from index on, in at most two runs of the ring
+        private void copy(int index, double[] pricesOut, long[] timestampsOut, int offset, int count) {
+            int from = start + index;
+            if (from >= prices.length) {
+                from -= prices.length;
+            }
+            int firstRun = Math.min(count, prices.length - from);
+            if (pricesOut != null) {
+                System.arraycopy(prices, from, pricesOut, offset, firstRun);
+                System.arraycopy(prices, 0, pricesOut, offset + firstRun, count - firstRun);
+            }
+            if (timestampsOut != null) {
+                System.arraycopy(timestamps, from, timestampsOut, offset, firstRun);
+                System.arraycopy(timestamps, 0, timestampsOut, offset + firstRun, count - firstRun);
+            }
+        }
 
-        public PricePoint(double price, long timestamp) {
-            this.price = price;
-            this.timestamp = timestamp;
+        // Index of the first point at or after the given time, by binary search
+        private int firstAtOrAfter(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timestamps[slot(middle)] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private synchronized long[] pack() {
+            long[] packed = new long[size * 2];
+            for (int index = 0; index < size; index++) {
+                int slot = slot(index);
+                packed[index * 2] = timestamps[slot];
+                packed[index * 2 + 1] = Double.doubleToRawLongBits(prices[slot]);
+            }
+            return packed;
+        }
+
+        private void unpack(long[] packed) {
+            for (int i = 0; i + 1 < packed.length; i += 2) {
+                add(Double.longBitsToDouble(packed[i + 1]), packed[i]);
+            }
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.stockmarketmod.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every listed stock's quote as of one market update, built once per update and never
+ * changed afterwards.
+ * <p>
+ * Values are kept in parallel arrays indexed by position, so any thread can read a snapshot
+ * it got hold of without copying or locking. The sequence number grows by one with every
+ * snapshot published, so a reader can tell whether anything changed since it last looked.
+ */
+public final class MarketSnapshot {
+    public static final MarketSnapshot EMPTY = new MarketSnapshot(0L, 0L, new String[0], new String[0],
+        new double[0], new double[0], new long[0], new double[0], new double[0]);
+
+    private final long sequence;
+    private final long gameTime;
+    private final String[] symbols;
+    private final String[] names;
+    private final double[] prices;
+    private final double[] changes;  // Since the previous price
+    private final long[] volumes;
+    private final double[] bestBids; // 0 when the book has no bids, or no book yet
+    private final double[] bestAsks; // 0 when the book has no asks, or no book yet
+    private final Map<String, Integer> indices;
+
+    /**
+     * Takes the arrays over as they are; the caller must not touch them afterwards.
+     */
+    public MarketSnapshot(long sequence, long gameTime, String[] symbols, String[] names, double[] prices,
+                          double[] changes, long[] volumes, double[] bestBids, double[] bestAsks) {
+        this.sequence = sequence;
+        this.gameTime = gameTime;
+        this.symbols = symbols;
+        this.names = names;
+        this.prices = prices;
+        this.changes = changes;
+        this.volumes = volumes;
+        this.bestBids = bestBids;
+        this.bestAsks = bestAsks;
+        this.indices = new HashMap<>(symbols.length * 2);
+        for (int i = 0; i < symbols.length; i++) {
+            indices.put(symbols[i], i);
+        }
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getGameTime() {
+        return gameTime;
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+
+    // Position of the symbol, or -1 if it was not listed when the snapshot was taken
+    public int indexOf(String symbol) {
+        Integer index = indices.get(symbol);
+        return index == null ? -1 : index;
+    }
+
+    public String getSymbol(int index) {
+        return symbols[index];
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public double getPrice(int index) {
+        return prices[index];
+    }
+
+    public double getChange(int index) {
+        return changes[index];
+    }
+
+    public long getVolume(int index) {
+        return volumes[index];
+    }
+
+    public double getBestBid(int index) {
+        return bestBids[index];
+    }
+
+    public double getBestAsk(int index) {
+        return bestAsks[index];
+    }
+}
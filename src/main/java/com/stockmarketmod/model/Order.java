@@ -7,33 +7,82 @@ import net.minecraftforge.common.util.INBTSerializable;
 import java.util.UUID;
 
 public class Order implements INBTSerializable<CompoundTag> {
-    private final UUID orderId;
+    public static final long NO_ID = 0;
+
+    private long orderId;  // Assigned by the book the order is sent to; later orders get higher ids
+    private int accountId; // Compact form of the player id, assigned alongside the order id
     private final UUID playerId;
     private final String symbol;
     private final OrderType type;
-    private final double price;
-    private final int quantity;
+    private final OrderKind kind;
+    private final TimeInForce timeInForce;
+    private double price;
+    private int quantity;
+    private int remainingQuantity;
     private final long timestamp;
+    private long expiryTick; // Game tick at which a resting order is cancelled, 0 for never
+
+    // Intrusive links into the price level this order is resting at
+    OrderQueue level;
+    Order prev;
+    Order next;
 
     public enum OrderType {
         BUY,
         SELL
     }
 
-    public Order(UUID orderId, UUID playerId, String symbol, OrderType type, double price, int quantity) {
+    public enum OrderKind {
+        LIMIT,  // Trades at its price or better
+        MARKET  // Trades at whatever the book offers; the price is only informational
+    }
+
+    public enum TimeInForce {
+        GOOD_TILL_CANCEL,    // Any remainder rests in the book
+        IMMEDIATE_OR_CANCEL, // Trades what it can on arrival, the remainder is dropped
+        FILL_OR_KILL         // Trades in full on arrival or not at all
+    }
+
+    public Order(UUID playerId, String symbol, OrderType type, double price, int quantity) {
+        this(playerId, symbol, type, OrderKind.LIMIT, price, quantity, TimeInForce.GOOD_TILL_CANCEL);
+    }
+
+    public Order(UUID playerId, String symbol, OrderType type, OrderKind kind, double price, int quantity,
+                 TimeInForce timeInForce) {
+        this(NO_ID, playerId, symbol, type, kind, price, quantity, timeInForce);
+    }
+
+    Order(long orderId, UUID playerId, String symbol, OrderType type, OrderKind kind, double price,
+                  int quantity, TimeInForce timeInForce) {
+        if (kind == OrderKind.MARKET && timeInForce == TimeInForce.GOOD_TILL_CANCEL) {
+            throw new IllegalArgumentException("Market orders cannot rest in the book");
+        }
         this.orderId = orderId;
         this.playerId = playerId;
         this.symbol = symbol;
         this.type = type;
+        this.kind = kind;
+        this.timeInForce = timeInForce;
         this.price = price;
         this.quantity = quantity;
+        this.remainingQuantity = quantity;
         this.timestamp = System.currentTimeMillis();
     }
 
-    public UUID getOrderId() {
+    // NO_ID until the order has been sent to a book
+    public long getOrderId() {
         return orderId;
     }
 
+    public int getAccountId() {
+        return accountId;
+    }
+
+    void assignIds(long orderId, int accountId) {
+        this.orderId = orderId;
+        this.accountId = accountId;
+    }
+
     public UUID getPlayerId() {
         return playerId;
     }
@@ -46,28 +95,81 @@ public class Order implements INBTSerializable<CompoundTag> {
         return type;
     }
 
+    public OrderKind getKind() {
+        return kind;
+    }
+
+    public TimeInForce getTimeInForce() {
+        return timeInForce;
+    }
+
+    // True for orders that only trade on arrival and never rest in the book
+    public boolean isImmediate() {
+        return timeInForce != TimeInForce.GOOD_TILL_CANCEL;
+    }
+
     public double getPrice() {
         return price;
     }
 
     public int getQuantity() {
+        return remainingQuantity;
+    }
+
+    public int getOriginalQuantity() {
         return quantity;
     }
 
+    public int getFilledQuantity() {
+        return quantity - remainingQuantity;
+    }
+
+    public boolean isFilled() {
+        return remainingQuantity == 0;
+    }
+
+    void fill(int amount) {
+        remainingQuantity -= amount;
+    }
+
+    void amend(double newPrice, int newRemainingQuantity) {
+        this.quantity = getFilledQuantity() + newRemainingQuantity;
+        this.price = newPrice;
+        this.remainingQuantity = newRemainingQuantity;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
 
+    public long getExpiryTick() {
+        return expiryTick;
+    }
+
+    // Only takes effect if set before the order is placed with a Market
+    public void setExpiryTick(long expiryTick) {
+        this.expiryTick = expiryTick;
+    }
+
     @Override
     public CompoundTag serializeNBT() {
         CompoundTag tag = new CompoundTag();
-        tag.putUUID("orderId", orderId);
-        tag.putUUID("playerId", playerId);
+        tag.putLong("orderId", orderId);
+        tag.putInt("account", accountId);
         tag.putString("symbol", symbol);
         tag.putString("type", type.name());
         tag.putDouble("price", price);
-        tag.putInt("quantity", quantity);
+        tag.putInt("quantity", remainingQuantity);
+        if (kind != OrderKind.LIMIT) {
+            tag.putString("kind", kind.name());
+        }
+        if (timeInForce != TimeInForce.GOOD_TILL_CANCEL) {
+            tag.putString("timeInForce", timeInForce.name());
+        }
         tag.putLong("timestamp", timestamp);
+        if (expiryTick > 0) {
+            tag.putLong("expiryTick", expiryTick);
+        }
         return tag;
     }
 
@@ -5,90 +5,538 @@ import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
 import net.minecraftforge.common.util.INBTSerializable;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
 
 public class OrderBook implements INBTSerializable<CompoundTag> {
+    public static final double DEFAULT_TICK_SIZE = 0.01;
+
     private final String symbol;
-    private final TreeMap<Double, List<Order>> buyOrders;  // Sorted by price (descending)
-    private final TreeMap<Double, List<Order>> sellOrders; // Sorted by price (ascending)
+    private final double tickSize;
+    private final double ticksPerUnit;
+    private final PriceLadder buyOrders;  // Best price is the highest tick
+    private final PriceLadder sellOrders; // Best price is the lowest tick
+    private final Map<Long, Order> ordersById; // Resting and pending trigger orders; may be shared with the other books of a market
+    private final FillRing fills;              // Likewise
+    private final AccountRegistry accounts;    // Likewise
+    private final AtomicLong orderIds;         // Likewise; last order id handed out
+    private boolean ownsAccounts;              // Standalone books save their own accounts and ids
     private double lastTradePrice;
     private int volume;
+    private long version; // Bumped on every change to the resting orders
+    final StampedLock lock = new StampedLock(); // Guards the book while it is used through a Market
+    int symbolId = -1;                          // Dense id of the book's symbol within its Market
+    boolean deliversFills = true;               // Cleared by a Market, which delivers after unlocking
+
+    // Pending triggers, each set ordered so the ones the price reaches first come first
+    private static final Comparator<TriggerOrder> BY_ID = Comparator.comparingLong(t -> t.getOrder().getOrderId());
+    private final TreeSet<TriggerOrder> risingTriggers =
+        new TreeSet<>(Comparator.<TriggerOrder>comparingLong(t -> t.triggerTick).thenComparing(BY_ID));
+    private final TreeSet<TriggerOrder> fallingTriggers =
+        new TreeSet<>(Comparator.<TriggerOrder>comparingLong(t -> -t.triggerTick).thenComparing(BY_ID));
+    private final Map<Long, TriggerOrder> pendingTriggers = new LinkedHashMap<>();
+    private final List<TriggerOrder> firedTriggers = new ArrayList<>();
+    private boolean firingTriggers;
+
+    // Scratch space for the auction uncross, reused between calls
+    private long[] auctionBidTicks = new long[16];
+    private long[] auctionBidQuantities = new long[16];
+    private long[] auctionAskTicks = new long[16];
+    private long[] auctionAskQuantities = new long[16];
 
     public OrderBook(String symbol) {
+        this(symbol, DEFAULT_TICK_SIZE);
+    }
+
+    public OrderBook(String symbol, double tickSize) {
+        this(symbol, tickSize, new HashMap<>(), new FillRing());
+        this.ownsAccounts = true;
+    }
+
+    OrderBook(String symbol, double tickSize, Map<Long, Order> ordersById, FillRing fills) {
+        this(symbol, tickSize, ordersById, fills, new AccountRegistry(), new AtomicLong());
+    }
+
+    OrderBook(String symbol, double tickSize, Map<Long, Order> ordersById, FillRing fills,
+              AccountRegistry accounts, AtomicLong orderIds) {
+        if (!(tickSize > 0)) {
+            throw new IllegalArgumentException("Tick size must be positive for " + symbol);
+        }
         this.symbol = symbol;
-        this.buyOrders = new TreeMap<>(Comparator.reverseOrder());
-        this.sellOrders = new TreeMap<>();
+        this.tickSize = tickSize;
+        this.ticksPerUnit = 1.0 / tickSize;
+        this.buyOrders = new PriceLadder(true);
+        this.sellOrders = new PriceLadder(false);
+        this.ordersById = ordersById;
+        this.fills = fills;
+        this.accounts = accounts;
+        this.orderIds = orderIds;
         this.lastTradePrice = 0;
         this.volume = 0;
     }
 
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public double getTickSize() {
+        return tickSize;
+    }
+
+    public long toTicks(double price) {
+        return Math.round(price * ticksPerUnit);
+    }
+
+    public double toPrice(long ticks) {
+        return ticks / ticksPerUnit;
+    }
+
     public void addOrder(Order order) {
-        TreeMap<Double, List<Order>> orders = order.getType() == Order.OrderType.BUY ? buyOrders : sellOrders;
-        orders.computeIfAbsent(order.getPrice(), k -> new ArrayList<>()).add(order);
-        matchOrders();
+        admit(order);
+        if (order.isImmediate()) {
+            if (order.getTimeInForce() != Order.TimeInForce.FILL_OR_KILL || canFill(order)) {
+                sweep(order);
+            }
+        } else {
+            rest(order);
+            matchOrders(order);
+        }
+        fireTriggers();
     }
 
-    private void matchOrders() {
-        while (!buyOrders.isEmpty() && !sellOrders.isEmpty()) {
-            Map.Entry<Double, List<Order>> bestBid = buyOrders.firstEntry();
-            Map.Entry<Double, List<Order>> bestAsk = sellOrders.firstEntry();
-
-            if (bestBid.getKey() >= bestAsk.getKey()) {
-                // Match orders
-                Order buyOrder = bestBid.getValue().get(0);
-                Order sellOrder = bestAsk.getValue().get(0);
-                int quantity = Math.min(buyOrder.getQuantity(), sellOrder.getQuantity());
-
-                // Execute trade
-                executeTrade(buyOrder, sellOrder, quantity);
-
-                // Remove or update orders
-                if (buyOrder.getQuantity() == 0) {
-                    bestBid.getValue().remove(0);
-                    if (bestBid.getValue().isEmpty()) {
-                        buyOrders.remove(bestBid.getKey());
-                    }
+    /**
+     * Holds an order outside the book until the last trade price reaches its trigger price.
+     * Triggers are only checked after trades, so placing one never trades by itself.
+     */
+    public void placeTrigger(TriggerOrder trigger) {
+        Order order = trigger.getOrder();
+        admit(order);
+        trigger.triggerTick = toTicks(trigger.getTriggerPrice());
+        (trigger.firesOnRise() ? risingTriggers : fallingTriggers).add(trigger);
+        pendingTriggers.put(order.getOrderId(), trigger);
+        ordersById.put(order.getOrderId(), order);
+    }
+
+    public int getPendingTriggerCount() {
+        return pendingTriggers.size();
+    }
+
+    // Releases every trigger the last trade has reached, oldest first. Trades made by released
+    // orders can reach further triggers, which are released in a following round.
+    private void fireTriggers() {
+        if (firingTriggers || lastTradePrice <= 0) {
+            return;
+        }
+        firingTriggers = true;
+        try {
+            while (true) {
+                long lastTick = toTicks(lastTradePrice);
+                // Only the triggers the price actually crossed are visited
+                while (!risingTriggers.isEmpty() && risingTriggers.first().triggerTick <= lastTick) {
+                    firedTriggers.add(risingTriggers.pollFirst());
+                }
+                while (!fallingTriggers.isEmpty() && fallingTriggers.first().triggerTick >= lastTick) {
+                    firedTriggers.add(fallingTriggers.pollFirst());
+                }
+                if (firedTriggers.isEmpty()) {
+                    return;
+                }
+                firedTriggers.sort(BY_ID);
+                for (TriggerOrder trigger : firedTriggers) {
+                    Order order = trigger.getOrder();
+                    pendingTriggers.remove(order.getOrderId());
+                    ordersById.remove(order.getOrderId());
+                    addOrder(order);
+                }
+                firedTriggers.clear();
+            }
+        } finally {
+            firedTriggers.clear();
+            firingTriggers = false;
+        }
+    }
+
+    private boolean cancelTrigger(long orderId) {
+        TriggerOrder trigger = pendingTriggers.remove(orderId);
+        if (trigger == null) {
+            return false;
+        }
+        (trigger.firesOnRise() ? risingTriggers : fallingTriggers).remove(trigger);
+        ordersById.remove(orderId);
+        return true;
+    }
+
+    // Rests an order without matching it; used while collecting orders for a call auction.
+    // Immediate orders have nothing to trade against before the uncross, so they are dropped.
+    public void queueOrder(Order order) {
+        admit(order);
+        if (!order.isImmediate()) {
+            rest(order);
+        }
+    }
+
+    // Numbers a new order; ids grow with arrival, so they double as the time priority
+    private void admit(Order order) {
+        if (order.getOrderId() == Order.NO_ID) {
+            order.assignIds(orderIds.incrementAndGet(), accounts.accountFor(order.getPlayerId()));
+        }
+    }
+
+    /**
+     * Uncrosses the book at the single price that executes the most volume. Ties go to the
+     * price that leaves the smallest imbalance, then to the one closest to the last trade.
+     *
+     * @return the quantity executed, 0 if the book was not crossed
+     */
+    public long uncross() {
+        cancelSelfCrosses();
+        if (buyOrders.isEmpty() || sellOrders.isEmpty() || buyOrders.bestTick() < sellOrders.bestTick()) {
+            return 0;
+        }
+        long bestBid = buyOrders.bestTick();
+        long bestAsk = sellOrders.bestTick();
+
+        // Gather the crossed levels of each side, both in ascending tick order
+        int bids = 0;
+        for (OrderQueue level = buyOrders.firstLevel(); level != null && level.getTick() >= bestAsk; level = buyOrders.nextLevel(level)) {
+            if (bids == auctionBidTicks.length) {
+                auctionBidTicks = Arrays.copyOf(auctionBidTicks, bids * 2);
+                auctionBidQuantities = Arrays.copyOf(auctionBidQuantities, bids * 2);
+            }
+            auctionBidTicks[bids] = level.getTick();
+            auctionBidQuantities[bids++] = level.getQuantity();
+        }
+        reverse(auctionBidTicks, bids);
+        reverse(auctionBidQuantities, bids);
+
+        int asks = 0;
+        for (OrderQueue level = sellOrders.firstLevel(); level != null && level.getTick() <= bestBid; level = sellOrders.nextLevel(level)) {
+            if (asks == auctionAskTicks.length) {
+                auctionAskTicks = Arrays.copyOf(auctionAskTicks, asks * 2);
+                auctionAskQuantities = Arrays.copyOf(auctionAskQuantities, asks * 2);
+            }
+            auctionAskTicks[asks] = level.getTick();
+            auctionAskQuantities[asks++] = level.getQuantity();
+        }
+
+        // Walk every candidate tick upwards: demand at a tick is all bids at or above it,
+        // supply is all asks at or below it
+        long demand = 0;
+        for (int i = 0; i < bids; i++) {
+            demand += auctionBidQuantities[i];
+        }
+        long supply = 0;
+        long referenceTick = lastTradePrice > 0 ? toTicks(lastTradePrice) : (bestBid + bestAsk) / 2;
+        long clearingTick = bestAsk;
+        long bestVolume = -1;
+        long bestImbalance = Long.MAX_VALUE;
+        int bid = 0;
+        int ask = 0;
+        while (bid < bids || ask < asks) {
+            long tick = ask < asks && (bid >= bids || auctionAskTicks[ask] <= auctionBidTicks[bid])
+                ? auctionAskTicks[ask] : auctionBidTicks[bid];
+            while (ask < asks && auctionAskTicks[ask] <= tick) {
+                supply += auctionAskQuantities[ask++];
+            }
+            long executable = Math.min(demand, supply);
+            long imbalance = Math.abs(demand - supply);
+            if (executable > bestVolume || (executable == bestVolume && (imbalance < bestImbalance
+                    || (imbalance == bestImbalance && Math.abs(tick - referenceTick) < Math.abs(clearingTick - referenceTick))))) {
+                clearingTick = tick;
+                bestVolume = executable;
+                bestImbalance = imbalance;
+            }
+            while (bid < bids && auctionBidTicks[bid] <= tick) {
+                demand -= auctionBidQuantities[bid++];
+            }
+        }
+
+        // Execute everything that crosses the clearing price, in price-time priority
+        double clearingPrice = toPrice(clearingTick);
+        long executed = 0;
+        while (!buyOrders.isEmpty() && !sellOrders.isEmpty()
+                && buyOrders.bestTick() >= clearingTick && sellOrders.bestTick() <= clearingTick) {
+            OrderQueue bidLevel = buyOrders.bestLevel();
+            OrderQueue askLevel = sellOrders.bestLevel();
+            Order buyOrder = bidLevel.peek();
+            Order sellOrder = askLevel.peek();
+            int quantity = Math.min(buyOrder.getQuantity(), sellOrder.getQuantity());
+
+            if (isTaker(sellOrder, buyOrder, null)) {
+                fills.record(buyOrder, sellOrder, clearingPrice, quantity);
+            } else {
+                fills.record(sellOrder, buyOrder, clearingPrice, quantity);
+            }
+            executeTrade(bidLevel, askLevel, buyOrder, sellOrder, quantity, clearingPrice);
+            executed += quantity;
+
+            buyOrders.removeIfEmpty(bidLevel);
+            sellOrders.removeIfEmpty(askLevel);
+        }
+        publishFills();
+        fireTriggers();
+        return executed;
+    }
+
+    // An account never trades with itself: wherever one of its bids crosses one of its asks, the
+    // older order makes way, as in continuous matching. Done before pricing, so that every pair
+    // the auction can execute is between two accounts.
+    private void cancelSelfCrosses() {
+        Map<Integer, Order> crossedBids = new HashMap<>();
+        boolean cancelled = true;
+        while (cancelled && !buyOrders.isEmpty() && !sellOrders.isEmpty() && buyOrders.bestTick() >= sellOrders.bestTick()) {
+            cancelled = false;
+            // Each account's highest crossed bid is the one its asks would meet first
+            crossedBids.clear();
+            long bestAsk = sellOrders.bestTick();
+            for (OrderQueue level = buyOrders.firstLevel(); level != null && level.getTick() >= bestAsk; level = buyOrders.nextLevel(level)) {
+                for (Order order = level.peek(); order != null; order = order.next) {
+                    crossedBids.putIfAbsent(order.getAccountId(), order);
                 }
-                if (sellOrder.getQuantity() == 0) {
-                    bestAsk.getValue().remove(0);
-                    if (bestAsk.getValue().isEmpty()) {
-                        sellOrders.remove(bestAsk.getKey());
+            }
+            long bestBid = buyOrders.bestTick();
+            search:
+            for (OrderQueue level = sellOrders.firstLevel(); level != null && level.getTick() <= bestBid; level = sellOrders.nextLevel(level)) {
+                for (Order order = level.peek(); order != null; order = order.next) {
+                    Order ownBid = crossedBids.get(order.getAccountId());
+                    if (ownBid != null && ownBid.level.getTick() >= level.getTick()) {
+                        unlink(isTaker(order, ownBid, null) ? ownBid : order);
+                        cancelled = true;
+                        break search;
                     }
                 }
+            }
+        }
+    }
+
+    // Books of a Market leave delivery to it, so that listeners never run under the book's lock
+    private void publishFills() {
+        fills.publish();
+        if (deliversFills) {
+            fills.flush();
+        }
+    }
+
+    private static void reverse(long[] values, int length) {
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            long tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    private void rest(Order order) {
+        version++;
+        sideOf(order).levelFor(toTicks(order.getPrice())).add(order);
+        ordersById.put(order.getOrderId(), order);
+    }
+
+    private PriceLadder sideOf(Order order) {
+        return order.getType() == Order.OrderType.BUY ? buyOrders : sellOrders;
+    }
+
+    private void unlink(Order order) {
+        version++;
+        OrderQueue level = order.level;
+        level.remove(order);
+        sideOf(order).removeIfEmpty(level);
+        ordersById.remove(order.getOrderId());
+    }
+
+    public Order getOrder(long orderId) {
+        Order order = ordersById.get(orderId);
+        return order != null && order.getSymbol().equals(symbol) ? order : null;
+    }
+
+    public boolean cancelOrder(long orderId) {
+        if (cancelTrigger(orderId)) {
+            return true;
+        }
+        Order order = getOrder(orderId);
+        if (order == null) {
+            return false;
+        }
+        unlink(order);
+        return true;
+    }
+
+    public boolean amendOrder(long orderId, double newPrice, int newQuantity) {
+        return amend(orderId, newPrice, newQuantity, true);
+    }
+
+    /**
+     * Amends an order like {@link #amendOrder} but leaves it resting without matching, the way
+     * {@link #queueOrder} places one, so a call auction can uncross the book later.
+     */
+    public boolean amendQueuedOrder(long orderId, double newPrice, int newQuantity) {
+        return amend(orderId, newPrice, newQuantity, false);
+    }
+
+    private boolean amend(long orderId, double newPrice, int newQuantity, boolean match) {
+        Order order = getOrder(orderId);
+        if (order == null || order.level == null) {
+            // Unknown, or a pending trigger; those can only be cancelled
+            return false;
+        }
+        if (newQuantity <= 0) {
+            unlink(order);
+            return true;
+        }
+
+        // Shrinking an order in place keeps its queue position; anything else re-queues it at the back
+        if (toTicks(newPrice) == order.level.getTick() && newQuantity <= order.getQuantity()) {
+            order.level.resize(order, newPrice, newQuantity);
+            version++;
+            return true;
+        }
+        unlink(order);
+        order.amend(newPrice, newQuantity);
+        rest(order);
+        if (match) {
+            matchOrders(order);
+            fireTriggers();
+        }
+        return true;
+    }
+
+    public FillRing getFills() {
+        return fills;
+    }
+
+    // The taker is the order whose arrival caused the cross; it may be null when the book was
+    // crossed by orders that were rested without matching
+    private void matchOrders(Order taker) {
+        while (!buyOrders.isEmpty() && !sellOrders.isEmpty()) {
+            long bidTick = buyOrders.bestTick();
+            long askTick = sellOrders.bestTick();
+            if (bidTick < askTick) {
+                break;
+            }
+
+            // Match orders
+            OrderQueue bidLevel = buyOrders.bestLevel();
+            OrderQueue askLevel = sellOrders.bestLevel();
+            Order buyOrder = bidLevel.peek();
+            Order sellOrder = askLevel.peek();
+            if (buyOrder.getAccountId() == sellOrder.getAccountId()) {
+                // An account never trades with itself; its older order makes way for the newer one
+                unlink(isTaker(sellOrder, buyOrder, taker) ? buyOrder : sellOrder);
+                continue;
+            }
+            int quantity = Math.min(buyOrder.getQuantity(), sellOrder.getQuantity());
+
+            // Execute trade
+            double price = (toPrice(bidTick) + toPrice(askTick)) / 2;
+            if (isTaker(sellOrder, buyOrder, taker)) {
+                fills.record(buyOrder, sellOrder, price, quantity);
             } else {
+                fills.record(sellOrder, buyOrder, price, quantity);
+            }
+            executeTrade(bidLevel, askLevel, buyOrder, sellOrder, quantity, price);
+
+            // Drop levels that were emptied by the trade
+            buyOrders.removeIfEmpty(bidLevel);
+            sellOrders.removeIfEmpty(askLevel);
+        }
+        publishFills();
+    }
+
+    // Checks whether other accounts on the opposite side can fill the whole order
+    private boolean canFill(Order taker) {
+        PriceLadder makers = oppositeOf(taker);
+        long needed = taker.getQuantity();
+        for (OrderQueue level = makers.firstLevel(); level != null && !outsideLimit(taker, level.getTick());
+             level = makers.nextLevel(level)) {
+            // The sweep cancels the taker's own orders rather than trading with them
+            needed -= level.getQuantityExcluding(taker.getAccountId());
+            if (needed <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Trades an immediate order straight against the opposite side; the order itself never rests,
+    // so whatever is left of it afterwards is simply not executed
+    private void sweep(Order taker) {
+        PriceLadder makers = oppositeOf(taker);
+        while (!taker.isFilled() && !makers.isEmpty()) {
+            long makerTick = makers.bestTick();
+            if (outsideLimit(taker, makerTick)) {
                 break;
             }
+            OrderQueue level = makers.bestLevel();
+            Order maker = level.peek();
+            if (maker.getAccountId() == taker.getAccountId()) {
+                unlink(maker);
+                continue;
+            }
+            int quantity = Math.min(maker.getQuantity(), taker.getQuantity());
+
+            // Limit orders split the spread like resting ones; market orders take the maker's price
+            double price = taker.getKind() == Order.OrderKind.MARKET
+                ? toPrice(makerTick)
+                : (toPrice(toTicks(taker.getPrice())) + toPrice(makerTick)) / 2;
+            fills.record(maker, taker, price, quantity);
+            lastTradePrice = price;
+            volume += quantity;
+            version++;
+
+            taker.fill(quantity);
+            level.fill(maker, quantity);
+            if (maker.isFilled()) {
+                level.remove(maker);
+                ordersById.remove(maker.getOrderId());
+            }
+            makers.removeIfEmpty(level);
+        }
+        publishFills();
+    }
+
+    private PriceLadder oppositeOf(Order order) {
+        return order.getType() == Order.OrderType.BUY ? sellOrders : buyOrders;
+    }
+
+    private boolean outsideLimit(Order taker, long makerTick) {
+        if (taker.getKind() == Order.OrderKind.MARKET) {
+            return false;
         }
+        long limitTick = toTicks(taker.getPrice());
+        return taker.getType() == Order.OrderType.BUY ? makerTick > limitTick : makerTick < limitTick;
     }
 
-    private void executeTrade(Order buyOrder, Order sellOrder, int quantity) {
-        double price = (buyOrder.getPrice() + sellOrder.getPrice()) / 2;
+    private static boolean isTaker(Order candidate, Order other, Order taker) {
+        if (taker != null && (candidate == taker || other == taker)) {
+            return candidate == taker;
+        }
+        return candidate.getOrderId() > other.getOrderId();
+    }
+
+    private void executeTrade(OrderQueue bidLevel, OrderQueue askLevel, Order buyOrder, Order sellOrder,
+                              int quantity, double price) {
         lastTradePrice = price;
         volume += quantity;
+        version++;
 
-        // Create new orders with updated quantities
-        Order newBuyOrder = new Order(buyOrder.getOrderId(), buyOrder.getPlayerId(), buyOrder.getSymbol(), 
-            Order.OrderType.BUY, buyOrder.getPrice(), buyOrder.getQuantity() - quantity);
-        Order newSellOrder = new Order(sellOrder.getOrderId(), sellOrder.getPlayerId(), sellOrder.getSymbol(), 
-            Order.OrderType.SELL, sellOrder.getPrice(), sellOrder.getQuantity() - quantity);
-
-        // Replace old orders with new ones
-        List<Order> buyList = buyOrders.get(buyOrder.getPrice());
-        List<Order> sellList = sellOrders.get(sellOrder.getPrice());
-        
-        if (buyList != null) {
-            buyList.remove(buyOrder);
-            if (newBuyOrder.getQuantity() > 0) {
-                buyList.add(newBuyOrder);
-            }
+        // Fill both orders in place; anything left over keeps its place at the front of the queue
+        bidLevel.fill(buyOrder, quantity);
+        if (buyOrder.isFilled()) {
+            bidLevel.remove(buyOrder);
+            ordersById.remove(buyOrder.getOrderId());
         }
-        
-        if (sellList != null) {
-            sellList.remove(sellOrder);
-            if (newSellOrder.getQuantity() > 0) {
-                sellList.add(newSellOrder);
-            }
+
+        askLevel.fill(sellOrder, quantity);
+        if (sellOrder.isFilled()) {
+            askLevel.remove(sellOrder);
+            ordersById.remove(sellOrder.getOrderId());
         }
     }
 
@@ -100,25 +548,84 @@ public class OrderBook implements INBTSerializable<CompoundTag> {
         return volume;
     }
 
+    // Open quantity resting on each side, kept up to date by every add, fill, amend and removal
+    public long getRestingBuyQuantity() {
+        return buyOrders.totalQuantity();
+    }
+
+    public long getRestingSellQuantity() {
+        return sellOrders.totalQuantity();
+    }
+
     public List<Order> getBuyOrders() {
-        return buyOrders.values().stream()
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
+        List<Order> orders = new ArrayList<>();
+        buyOrders.collectOrders(orders);
+        return orders;
     }
 
     public List<Order> getSellOrders() {
-        return sellOrders.values().stream()
-                .flatMap(List::stream)
-                .collect(Collectors.toList());
+        List<Order> orders = new ArrayList<>();
+        sellOrders.collectOrders(orders);
+        return orders;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int copyBuyLevels(double[] prices, long[] quantities, int maxLevels) {
+        return copyLevels(buyOrders, prices, quantities, maxLevels);
+    }
+
+    public int copySellLevels(double[] prices, long[] quantities, int maxLevels) {
+        return copyLevels(sellOrders, prices, quantities, maxLevels);
+    }
+
+    // Copies the top levels of one side into caller-owned buffers and returns how many were written
+    private int copyLevels(PriceLadder side, double[] prices, long[] quantities, int maxLevels) {
+        int limit = Math.min(maxLevels, Math.min(prices.length, quantities.length));
+        int count = 0;
+        for (OrderQueue level = side.firstLevel(); level != null && count < limit; level = side.nextLevel(level)) {
+            prices[count] = toPrice(level.getTick());
+            quantities[count] = level.getQuantity();
+            count++;
+        }
+        return count;
+    }
+
+    public List<Market.PriceLevel> getBuyLevels(int maxLevels) {
+        return getLevels(buyOrders, maxLevels);
+    }
+
+    public List<Market.PriceLevel> getSellLevels(int maxLevels) {
+        return getLevels(sellOrders, maxLevels);
+    }
+
+    private List<Market.PriceLevel> getLevels(PriceLadder side, int maxLevels) {
+        List<Market.PriceLevel> levels = new ArrayList<>(Math.min(maxLevels, side.levelCount()));
+        for (OrderQueue level = side.firstLevel(); level != null && levels.size() < maxLevels; level = side.nextLevel(level)) {
+            levels.add(new Market.PriceLevel(toPrice(level.getTick()), (int) level.getQuantity(), level.getOrderCount()));
+        }
+        return levels;
     }
 
     public void addBuyOrder(Order order) {
-        buyOrders.computeIfAbsent(order.getPrice(), k -> new ArrayList<>()).add(order);
+        if (order.isImmediate()) {
+            addOrder(order);
+            return;
+        }
+        admit(order);
+        rest(order);
         volume += order.getQuantity();
     }
 
     public void addSellOrder(Order order) {
-        sellOrders.computeIfAbsent(order.getPrice(), k -> new ArrayList<>()).add(order);
+        if (order.isImmediate()) {
+            addOrder(order);
+            return;
+        }
+        admit(order);
+        rest(order);
         volume += order.getQuantity();
     }
 
@@ -126,57 +633,94 @@ public class OrderBook implements INBTSerializable<CompoundTag> {
     public CompoundTag serializeNBT() {
         CompoundTag tag = new CompoundTag();
         tag.putString("symbol", symbol);
+        tag.putDouble("tickSize", tickSize);
         tag.putDouble("lastTradePrice", lastTradePrice);
         tag.putInt("volume", volume);
 
         ListTag buyOrdersTag = new ListTag();
-        buyOrders.values().stream()
-                .flatMap(List::stream)
-                .forEach(order -> buyOrdersTag.add(order.serializeNBT()));
+        for (Order order : getBuyOrders()) {
+            buyOrdersTag.add(order.serializeNBT());
+        }
         tag.put("buyOrders", buyOrdersTag);
 
         ListTag sellOrdersTag = new ListTag();
-        sellOrders.values().stream()
-                .flatMap(List::stream)
-                .forEach(order -> sellOrdersTag.add(order.serializeNBT()));
+        for (Order order : getSellOrders()) {
+            sellOrdersTag.add(order.serializeNBT());
+        }
         tag.put("sellOrders", sellOrdersTag);
 
+        ListTag triggersTag = new ListTag();
+        for (TriggerOrder trigger : pendingTriggers.values()) {
+            triggersTag.add(trigger.serializeNBT());
+        }
+        tag.put("triggers", triggersTag);
+
+        if (ownsAccounts) {
+            tag.putLongArray("accounts", accounts.toLongArray());
+            tag.putLong("lastOrderId", orderIds.get());
+        }
         return tag;
     }
 
     @Override
     public void deserializeNBT(CompoundTag tag) {
+        version++;
         lastTradePrice = tag.getDouble("lastTradePrice");
         volume = tag.getInt("volume");
+        if (ownsAccounts && tag.contains("accounts")) {
+            accounts.fromLongArray(tag.getLongArray("accounts"));
+            orderIds.set(tag.getLong("lastOrderId"));
+        }
 
+        // Orders were saved in price-time priority, so re-resting them in order keeps the queue positions
+        getBuyOrders().forEach(order -> ordersById.remove(order.getOrderId()));
+        getSellOrders().forEach(order -> ordersById.remove(order.getOrderId()));
+        pendingTriggers.keySet().forEach(ordersById::remove);
         buyOrders.clear();
         ListTag buyOrdersTag = tag.getList("buyOrders", Tag.TAG_COMPOUND);
         for (int i = 0; i < buyOrdersTag.size(); i++) {
-            CompoundTag orderTag = buyOrdersTag.getCompound(i);
-            Order order = new Order(
-                orderTag.getUUID("orderId"),
-                orderTag.getUUID("playerId"),
-                symbol,
-                Order.OrderType.BUY,
-                orderTag.getDouble("price"),
-                orderTag.getInt("quantity")
-            );
-            buyOrders.computeIfAbsent(order.getPrice(), k -> new ArrayList<>()).add(order);
+            rest(restoreOrder(buyOrdersTag.getCompound(i), Order.OrderType.BUY));
         }
 
         sellOrders.clear();
         ListTag sellOrdersTag = tag.getList("sellOrders", Tag.TAG_COMPOUND);
         for (int i = 0; i < sellOrdersTag.size(); i++) {
-            CompoundTag orderTag = sellOrdersTag.getCompound(i);
-            Order order = new Order(
-                orderTag.getUUID("orderId"),
-                orderTag.getUUID("playerId"),
-                symbol,
-                Order.OrderType.SELL,
-                orderTag.getDouble("price"),
-                orderTag.getInt("quantity")
-            );
-            sellOrders.computeIfAbsent(order.getPrice(), k -> new ArrayList<>()).add(order);
-        }
-    }
-} 
\ No newline at end of file
+            rest(restoreOrder(sellOrdersTag.getCompound(i), Order.OrderType.SELL));
+        }
+
+        pendingTriggers.clear();
+        risingTriggers.clear();
+        fallingTriggers.clear();
+        ListTag triggersTag = tag.getList("triggers", Tag.TAG_COMPOUND);
+        for (int i = 0; i < triggersTag.size(); i++) {
+            CompoundTag triggerTag = triggersTag.getCompound(i);
+            placeTrigger(new TriggerOrder(
+                TriggerOrder.TriggerType.valueOf(triggerTag.getString("triggerType")),
+                triggerTag.getDouble("triggerPrice"),
+                restoreOrder(triggerTag, Order.OrderType.valueOf(triggerTag.getString("type")))
+            ));
+        }
+    }
+
+    private Order restoreOrder(CompoundTag orderTag, Order.OrderType type) {
+        // Older saves identified orders and players by UUID; those orders are numbered afresh
+        if (!orderTag.contains("account", Tag.TAG_INT)) {
+            Order order = new Order(orderTag.getUUID("playerId"), symbol, type,
+                orderTag.getDouble("price"), orderTag.getInt("quantity"));
+            admit(order);
+            return order;
+        }
+        long orderId = orderTag.getLong("orderId");
+        int accountId = orderTag.getInt("account");
+        Order.OrderKind kind = orderTag.contains("kind")
+            ? Order.OrderKind.valueOf(orderTag.getString("kind")) : Order.OrderKind.LIMIT;
+        Order.TimeInForce timeInForce = orderTag.contains("timeInForce")
+            ? Order.TimeInForce.valueOf(orderTag.getString("timeInForce")) : Order.TimeInForce.GOOD_TILL_CANCEL;
+        Order order = new Order(orderId, accounts.playerFor(accountId), symbol, type, kind,
+            orderTag.getDouble("price"), orderTag.getInt("quantity"), timeInForce);
+        order.assignIds(orderId, accountId);
+        order.setExpiryTick(orderTag.getLong("expiryTick"));
+        orderIds.accumulateAndGet(orderId, Math::max);
+        return order;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,113 @@
+package com.stockmarketmod.model;
+
+import java.util.List;
+
+/**
+ * All resting orders at a single price level, in time priority.
+ * <p>
+ * Orders are linked through their own {@code prev}/{@code next} fields, so appending,
+ * popping the head and unlinking an arbitrary order are all O(1) and allocation-free.
+ * The level also keeps a running total of its open quantity and order count, which
+ * every add, fill, amend and removal updates, and passes quantity changes on to the
+ * total of its side of the book.
+ */
+final class OrderQueue {
+    private final PriceLadder side;
+    private final long tick;
+    private Order head;
+    private Order tail;
+    private long quantity;
+    private int orderCount;
+
+    OrderQueue(PriceLadder side, long tick) {
+        this.side = side;
+        this.tick = tick;
+    }
+
+    long getTick() {
+        return tick;
+    }
+
+    long getQuantity() {
+        return quantity;
+    }
+
+    int getOrderCount() {
+        return orderCount;
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    Order peek() {
+        return head;
+    }
+
+    // Open quantity of the orders other accounts have at this level
+    long getQuantityExcluding(int accountId) {
+        long others = quantity;
+        for (Order order = head; order != null; order = order.next) {
+            if (order.getAccountId() == accountId) {
+                others -= order.getQuantity();
+            }
+        }
+        return others;
+    }
+
+    void add(Order order) {
+        order.level = this;
+        order.prev = tail;
+        order.next = null;
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.next = order;
+        }
+        tail = order;
+        quantity += order.getQuantity();
+        side.adjustQuantity(order.getQuantity());
+        orderCount++;
+    }
+
+    void fill(Order order, int amount) {
+        order.fill(amount);
+        quantity -= amount;
+        side.adjustQuantity(-amount);
+    }
+
+    void resize(Order order, double newPrice, int newQuantity) {
+        quantity += newQuantity - order.getQuantity();
+        side.adjustQuantity(newQuantity - order.getQuantity());
+        order.amend(newPrice, newQuantity);
+    }
+
+    boolean remove(Order order) {
+        if (order.level != this) {
+            return false;
+        }
+        if (order.prev == null) {
+            head = order.next;
+        } else {
+            order.prev.next = order.next;
+        }
+        if (order.next == null) {
+            tail = order.prev;
+        } else {
+            order.next.prev = order.prev;
+        }
+        quantity -= order.getQuantity();
+        side.adjustQuantity(-order.getQuantity());
+        orderCount--;
+        order.level = null;
+        order.prev = null;
+        order.next = null;
+        return true;
+    }
+
+    void collect(List<Order> out) {
+        for (Order order = head; order != null; order = order.next) {
+            out.add(order);
+        }
+    }
+}
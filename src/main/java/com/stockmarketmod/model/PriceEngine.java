@@ -0,0 +1,233 @@
+package com.stockmarketmod.model;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraftforge.common.util.INBTSerializable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The one place a stock's price comes from.
+ * <p>
+ * The mark price of a symbol blends up to three inputs: the last trade, the mid of the best
+ * bid and ask, and the simulation's model price. Each input has a configurable weight, and
+ * inputs a symbol does not have yet are left out, with the remaining weights scaled up to
+ * make one. Whenever an input changes, only that symbol's mark is recomputed.
+ * <p>
+ * A trade's weight fades with its age in game ticks and is gone once it is older than the
+ * trade lifetime, so a symbol nobody trades drifts back to its model price.
+ * <p>
+ * Trades arrive as fills on the matching thread, model prices and quotes on the server
+ * thread, so each symbol's inputs are guarded by its own entry. The mark itself is
+ * published through a volatile field and read without locking.
+ */
+public class PriceEngine implements FillRing.FillListener, INBTSerializable<CompoundTag> {
+    public static final double DEFAULT_TRADE_WEIGHT = 0.4;
+    public static final double DEFAULT_MID_WEIGHT = 0.3;
+    public static final double DEFAULT_MODEL_WEIGHT = 0.3;
+    public static final long DEFAULT_TRADE_LIFETIME = 20L * 60 * 5; // Five market updates
+
+    private final Map<String, Mark> marks = new ConcurrentHashMap<>();
+    private volatile double tradeWeight = DEFAULT_TRADE_WEIGHT;
+    private volatile double midWeight = DEFAULT_MID_WEIGHT;
+    private volatile double modelWeight = DEFAULT_MODEL_WEIGHT;
+    private volatile long tradeLifetime = DEFAULT_TRADE_LIFETIME;
+    private volatile long gameTick;
+
+    private static final class Mark {
+        private double lastTrade = Double.NaN;
+        private long lastTradeTick;
+        private double mid = Double.NaN;
+        private double model = Double.NaN;
+        private volatile double price = Double.NaN;
+    }
+
+    /**
+     * Sets how much each input counts towards the mark. The weights need not add up to one;
+     * marks already published are recomputed right away.
+     */
+    public void configure(double tradeWeight, double midWeight, double modelWeight) {
+        if (tradeWeight < 0 || midWeight < 0 || modelWeight < 0 || tradeWeight + midWeight + modelWeight <= 0) {
+            throw new IllegalArgumentException("Invalid mark price weights");
+        }
+        this.tradeWeight = tradeWeight;
+        this.midWeight = midWeight;
+        this.modelWeight = modelWeight;
+        remarkAll();
+    }
+
+    // Number of game ticks over which a trade's weight in the mark fades to nothing
+    public void setTradeLifetime(long ticks) {
+        if (ticks <= 0) {
+            throw new IllegalArgumentException("Trade lifetime must be positive");
+        }
+        this.tradeLifetime = ticks;
+        remarkAll();
+    }
+
+    /**
+     * Moves the engine's clock to the given game tick and recomputes the marks, fading out
+     * trades that have aged since.
+     */
+    public void advance(long gameTick) {
+        this.gameTick = gameTick;
+        remarkAll();
+    }
+
+    @Override
+    public void onFills(FillRing fills, long fromSequence, long toSequence) {
+        for (long sequence = fromSequence; sequence < toSequence; sequence++) {
+            onTrade(fills.getSymbol(sequence), fills.getPrice(sequence), fills.getGameTick(sequence));
+        }
+    }
+
+    public void onTrade(String symbol, double price) {
+        onTrade(symbol, price, gameTick);
+    }
+
+    public void onTrade(String symbol, double price, long tradeTick) {
+        Mark mark = mark(symbol);
+        synchronized (mark) {
+            mark.lastTrade = price;
+            mark.lastTradeTick = tradeTick;
+            remark(mark);
+        }
+    }
+
+    // A side without orders is passed as 0; the mid is only used while both sides are quoted
+    public void onQuote(String symbol, double bestBid, double bestAsk) {
+        Mark mark = mark(symbol);
+        synchronized (mark) {
+            mark.mid = bestBid > 0 && bestAsk > 0 ? (bestBid + bestAsk) / 2.0 : Double.NaN;
+            remark(mark);
+        }
+    }
+
+    public void setModelPrice(String symbol, double price) {
+        Mark mark = mark(symbol);
+        synchronized (mark) {
+            mark.model = price;
+            remark(mark);
+        }
+    }
+
+    private Mark mark(String symbol) {
+        return marks.computeIfAbsent(symbol, s -> new Mark());
+    }
+
+    private void remarkAll() {
+        for (Mark mark : marks.values()) {
+            synchronized (mark) {
+                remark(mark);
+            }
+        }
+    }
+
+    private void remark(Mark mark) {
+        double weighted = 0.0;
+        double weights = 0.0;
+        if (!Double.isNaN(mark.lastTrade)) {
+            // Fills can be stamped a little ahead of the engine's clock
+            long age = Math.max(0L, gameTick - mark.lastTradeTick);
+            double fade = 1.0 - (double) age / tradeLifetime;
+            if (fade > 0) {
+                weighted += tradeWeight * fade * mark.lastTrade;
+                weights += tradeWeight * fade;
+            } else {
+                mark.lastTrade = Double.NaN;
+            }
+        }
+        if (!Double.isNaN(mark.mid)) {
+            weighted += midWeight * mark.mid;
+            weights += midWeight;
+        }
+        if (!Double.isNaN(mark.model)) {
+            weighted += modelWeight * mark.model;
+            weights += modelWeight;
+        }
+        if (weights > 0) {
+            mark.price = weighted / weights;
+        } else if (!Double.isNaN(mark.model)) {
+            // Only zero-weighted inputs so far; the model still gives the symbol a price
+            mark.price = mark.model;
+        }
+    }
+
+    // 0.0 for a symbol that has no price yet
+    public double getMarkPrice(String symbol) {
+        Mark mark = marks.get(symbol);
+        return mark == null || Double.isNaN(mark.price) ? 0.0 : mark.price;
+    }
+
+    // The simulation's own price, which the model steps from; the mark until a model price is set
+    public double getModelPrice(String symbol) {
+        Mark mark = marks.get(symbol);
+        if (mark == null) {
+            return 0.0;
+        }
+        synchronized (mark) {
+            return Double.isNaN(mark.model) ? getMarkPrice(symbol) : mark.model;
+        }
+    }
+
+    public boolean hasMarkPrice(String symbol) {
+        Mark mark = marks.get(symbol);
+        return mark != null && !Double.isNaN(mark.price);
+    }
+
+    // A copy of every published mark price
+    public Map<String, Double> getMarkPrices() {
+        Map<String, Double> prices = new HashMap<>();
+        for (Map.Entry<String, Mark> entry : marks.entrySet()) {
+            double price = entry.getValue().price;
+            if (!Double.isNaN(price)) {
+                prices.put(entry.getKey(), price);
+            }
+        }
+        return prices;
+    }
+
+    @Override
+    public CompoundTag serializeNBT() {
+        CompoundTag tag = new CompoundTag();
+        tag.putLong("gameTick", gameTick);
+        CompoundTag marksTag = new CompoundTag();
+        for (Map.Entry<String, Mark> entry : marks.entrySet()) {
+            Mark mark = entry.getValue();
+            CompoundTag markTag = new CompoundTag();
+            synchronized (mark) {
+                if (!Double.isNaN(mark.lastTrade)) {
+                    markTag.putDouble("lastTrade", mark.lastTrade);
+                    markTag.putLong("lastTradeTick", mark.lastTradeTick);
+                }
+                if (!Double.isNaN(mark.mid)) {
+                    markTag.putDouble("mid", mark.mid);
+                }
+                if (!Double.isNaN(mark.model)) {
+                    markTag.putDouble("model", mark.model);
+                }
+            }
+            marksTag.put(entry.getKey(), markTag);
+        }
+        tag.put("marks", marksTag);
+        return tag;
+    }
+
+    @Override
+    public void deserializeNBT(CompoundTag tag) {
+        gameTick = tag.getLong("gameTick");
+        CompoundTag marksTag = tag.getCompound("marks");
+        for (String symbol : marksTag.getAllKeys()) {
+            CompoundTag markTag = marksTag.getCompound(symbol);
+            Mark mark = mark(symbol);
+            synchronized (mark) {
+                mark.lastTrade = markTag.contains("lastTrade") ? markTag.getDouble("lastTrade") : Double.NaN;
+                mark.lastTradeTick = markTag.getLong("lastTradeTick");
+                mark.mid = markTag.contains("mid") ? markTag.getDouble("mid") : Double.NaN;
+                mark.model = markTag.contains("model") ? markTag.getDouble("model") : Double.NaN;
+                remark(mark);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.stockmarketmod.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One side of an order book laid out as a ladder of integer price ticks.
+ * <p>
+ * Levels inside a fixed window around the best price live in a flat array indexed by
+ * tick offset, with an occupancy bitmap for finding the next best level. Levels that
+ * fall outside the window are parked in an overflow map. The window is re-centred
+ * whenever the best price would otherwise leave it, so the overflow only ever holds
+ * prices that are worse than everything in the window.
+ */
+final class PriceLadder {
+    private static final int WINDOW_SIZE = 1024; // Must be a multiple of 64
+    private static final int HEADROOM = WINDOW_SIZE / 4; // Free ticks kept on the improving side of the best price
+
+    private final boolean bids;
+    private final OrderQueue[] slots = new OrderQueue[WINDOW_SIZE];
+    private final long[] occupied = new long[WINDOW_SIZE >> 6];
+    private final TreeMap<Long, OrderQueue> overflow = new TreeMap<>();
+    private long baseTick;     // Tick stored in slot 0
+    private int bestSlot = -1; // -1 when the window is empty
+    private int windowLevels;
+    private long totalQuantity; // Open quantity of every order on this side
+
+    PriceLadder(boolean bids) {
+        this.bids = bids;
+    }
+
+    boolean isEmpty() {
+        // The window is only ever empty when the overflow is empty too
+        return windowLevels == 0;
+    }
+
+    long bestTick() {
+        return baseTick + bestSlot;
+    }
+
+    OrderQueue bestLevel() {
+        return bestSlot < 0 ? null : slots[bestSlot];
+    }
+
+    OrderQueue levelFor(long tick) {
+        if (windowLevels == 0) {
+            recenter(tick);
+        } else if (!inWindow(tick) && isBetter(tick, bestTick())) {
+            overflow.computeIfAbsent(tick, t -> new OrderQueue(this, t));
+            recenter(tick);
+        }
+
+        if (!inWindow(tick)) {
+            return overflow.computeIfAbsent(tick, t -> new OrderQueue(this, t));
+        }
+
+        int slot = (int) (tick - baseTick);
+        OrderQueue level = slots[slot];
+        if (level == null) {
+            level = new OrderQueue(this, tick);
+            occupy(slot, level);
+        }
+        return level;
+    }
+
+    void removeIfEmpty(OrderQueue level) {
+        if (!level.isEmpty()) {
+            return;
+        }
+        long tick = level.getTick();
+        if (!inWindow(tick)) {
+            overflow.remove(tick);
+            return;
+        }
+
+        int slot = (int) (tick - baseTick);
+        if (slots[slot] != level) {
+            return;
+        }
+        slots[slot] = null;
+        occupied[slot >> 6] &= ~(1L << (slot & 63));
+        windowLevels--;
+
+        if (slot == bestSlot) {
+            bestSlot = windowLevels == 0 ? -1 : nextSlot(slot);
+        }
+        if (windowLevels == 0 && !overflow.isEmpty()) {
+            recenter(bids ? overflow.lastKey() : overflow.firstKey());
+        }
+    }
+
+    long totalQuantity() {
+        return totalQuantity;
+    }
+
+    // Called by the levels of this side whenever their open quantity changes
+    void adjustQuantity(long delta) {
+        totalQuantity += delta;
+    }
+
+    int levelCount() {
+        return windowLevels + overflow.size();
+    }
+
+    OrderQueue firstLevel() {
+        return bestLevel();
+    }
+
+    // Level after the given one in price priority, or null at the end of the book
+    OrderQueue nextLevel(OrderQueue level) {
+        long tick = level.getTick();
+        Map.Entry<Long, OrderQueue> entry;
+        if (inWindow(tick)) {
+            int slot = nextSlot((int) (tick - baseTick));
+            if (slot >= 0) {
+                return slots[slot];
+            }
+            entry = bids ? overflow.lastEntry() : overflow.firstEntry();
+        } else {
+            entry = bids ? overflow.lowerEntry(tick) : overflow.higherEntry(tick);
+        }
+        return entry == null ? null : entry.getValue();
+    }
+
+    void collectOrders(List<Order> out) {
+        for (OrderQueue level = firstLevel(); level != null; level = nextLevel(level)) {
+            level.collect(out);
+        }
+    }
+
+    void clear() {
+        for (int slot = bestSlot; slot >= 0; slot = nextSlot(slot)) {
+            slots[slot] = null;
+        }
+        Arrays.fill(occupied, 0L);
+        overflow.clear();
+        bestSlot = -1;
+        windowLevels = 0;
+        totalQuantity = 0;
+    }
+
+    private boolean inWindow(long tick) {
+        return tick >= baseTick && tick < baseTick + WINDOW_SIZE;
+    }
+
+    private boolean isBetter(long tick, long than) {
+        return bids ? tick > than : tick < than;
+    }
+
+    private void occupy(int slot, OrderQueue level) {
+        slots[slot] = level;
+        occupied[slot >> 6] |= 1L << (slot & 63);
+        windowLevels++;
+        if (bestSlot < 0 || (bids ? slot > bestSlot : slot < bestSlot)) {
+            bestSlot = slot;
+        }
+    }
+
+    // Next occupied slot after the given one, walking away from the best price
+    private int nextSlot(int slot) {
+        return bids ? highestSetBelow(slot - 1) : lowestSetAbove(slot + 1);
+    }
+
+    private int highestSetBelow(int from) {
+        if (from < 0) return -1;
+        int word = from >> 6;
+        long bits = occupied[word] & (-1L >>> (63 - (from & 63)));
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+            if (--word < 0) return -1;
+            bits = occupied[word];
+        }
+    }
+
+    private int lowestSetAbove(int from) {
+        if (from >= WINDOW_SIZE) return -1;
+        int word = from >> 6;
+        long bits = occupied[word] & (-1L << (from & 63));
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == occupied.length) return -1;
+            bits = occupied[word];
+        }
+    }
+
+    // Moves the window so that the given best tick sits inside it, leaving headroom for
+    // prices that improve on it. Levels that no longer fit are moved to the overflow.
+    private void recenter(long newBestTick) {
+        for (int slot = bestSlot; slot >= 0; slot = nextSlot(slot)) {
+            overflow.put(slots[slot].getTick(), slots[slot]);
+            slots[slot] = null;
+        }
+        Arrays.fill(occupied, 0L);
+        bestSlot = -1;
+        windowLevels = 0;
+
+        baseTick = bids ? newBestTick - (WINDOW_SIZE - HEADROOM) + 1 : newBestTick - HEADROOM;
+
+        if (overflow.isEmpty()) {
+            return;
+        }
+        Map<Long, OrderQueue> inside = overflow.subMap(baseTick, true, baseTick + WINDOW_SIZE - 1, true);
+        for (OrderQueue level : inside.values()) {
+            occupy((int) (level.getTick() - baseTick), level);
+        }
+        inside.clear();
+    }
+}
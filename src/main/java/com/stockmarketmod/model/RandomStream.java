@@ -0,0 +1,96 @@
+package com.stockmarketmod.model;
+
+/**
+ * Seeded SplitMix64 generator whose whole state is one long, so it can be saved and
+ * restored exactly.
+ * <p>
+ * Streams form a hierarchy: {@link #split(String)} derives an independent child stream from
+ * this stream's seed and a name, without consuming anything from this stream. A world seed
+ * therefore fixes the stream of every subsystem and symbol, however many there are and in
+ * whatever order they are created, and each stream yields the same sequence whether the
+ * simulation runs serially, batched or in parallel.
+ */
+public final class RandomStream {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long seed;
+    private long state;
+
+    public RandomStream(long seed) {
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    // Resumes a saved stream
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    public RandomStream split(String name) {
+        return new RandomStream(childSeed(seed, name));
+    }
+
+    public long nextLong() {
+        state = advance(state);
+        return mix64(state);
+    }
+
+    // Uniform in [0, 1)
+    public double nextDouble() {
+        state = advance(state);
+        return doubleAt(state);
+    }
+
+    // Standard normal, from two uniforms by the Box-Muller transform; no spare value is kept
+    public double nextGaussian() {
+        double radius = Math.sqrt(-2.0 * Math.log(1.0 - nextDouble()));
+        return radius * Math.cos(2.0 * Math.PI * nextDouble());
+    }
+
+    // Uniform in [0, bound)
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        return (int) (((nextLong() >>> 33) * bound) >>> 31);
+    }
+
+    /**
+     * Seed of the child stream with the given name. Children with different names are
+     * independent of each other and of their parent.
+     */
+    public static long childSeed(long seed, String name) {
+        long hash = mix64(seed + GOLDEN_GAMMA);
+        for (int i = 0; i < name.length(); i++) {
+            hash = mix64(hash + name.charAt(i) * GOLDEN_GAMMA);
+        }
+        return hash;
+    }
+
+    /**
+     * The state after one step. With {@link #doubleAt} this lets a stream live in a plain
+     * long field or array element instead of an object.
+     */
+    public static long advance(long state) {
+        return state + GOLDEN_GAMMA;
+    }
+
+    // The double produced by a stream that has just advanced to the given state
+    public static double doubleAt(long state) {
+        return (mix64(state) >>> 11) * 0x1.0p-53;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,174 @@
+package com.stockmarketmod.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups stocks into sectors for market-wide and sector-wide events.
+ * <p>
+ * Every stock gets a dense int id and a home sector. Sectors can be nested under a parent,
+ * all the way up to {@link #MARKET}, which holds every stock. Each sector keeps its members
+ * as a bit set over stock ids, and a stock added to a sector is also added to every sector
+ * above it, so applying an event to a sector is a single pass over its member ids. Indices
+ * that cut across sectors are sectors too; stocks are added to them with
+ * {@link #addMember(String, String)}.
+ */
+public class SectorRegistry {
+    public static final String MARKET = "market";
+
+    private final Map<String, Sector> sectors = new LinkedHashMap<>();
+    private final Map<String, Integer> stockIds = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+    private final List<String> homeSectors = new ArrayList<>();
+    private int version; // Bumped whenever a sector or a membership changes
+
+    private static final class Sector {
+        private final String parent;
+        private final List<String> children = new ArrayList<>();
+        private final BitSet members = new BitSet();
+        private int[] memberIds; // Built from the bit set on first use after a change
+
+        private Sector(String parent) {
+            this.parent = parent;
+        }
+    }
+
+    public SectorRegistry() {
+        sectors.put(MARKET, new Sector(null));
+    }
+
+    /**
+     * Defines a sector, or an index, under the given parent sector.
+     */
+    public void defineSector(String sector, String parent) {
+        Sector parentSector = sector(parent);
+        if (sectors.containsKey(sector)) {
+            throw new IllegalArgumentException("Sector " + sector + " already defined");
+        }
+        sectors.put(sector, new Sector(parent));
+        parentSector.children.add(sector);
+        version++;
+    }
+
+    /**
+     * Registers a stock with its home sector, or moves an already registered stock to a new
+     * home sector.
+     *
+     * @return the stock's id
+     */
+    public int addStock(String symbol, String sector) {
+        sector(sector);
+        Integer existing = stockIds.get(symbol);
+        int id;
+        if (existing == null) {
+            id = symbols.size();
+            stockIds.put(symbol, id);
+            symbols.add(symbol);
+            homeSectors.add(sector);
+        } else {
+            id = existing;
+            if (!homeSectors.get(id).equals(sector)) {
+                for (String old = homeSectors.get(id); old != null; old = sectors.get(old).parent) {
+                    remove(sectors.get(old), id);
+                }
+                homeSectors.set(id, sector);
+            }
+        }
+        addMember(sector, id);
+        return id;
+    }
+
+    // Adds a registered stock to a sector or index, and to every sector above it
+    public void addMember(String sector, String symbol) {
+        Integer id = stockIds.get(symbol);
+        if (id == null) {
+            throw new IllegalArgumentException("Stock " + symbol + " not registered");
+        }
+        addMember(sector, id);
+    }
+
+    private void addMember(String sector, int id) {
+        for (String current = sector; current != null; current = sectors.get(current).parent) {
+            Sector entry = sector(current);
+            if (!entry.members.get(id)) {
+                entry.members.set(id);
+                entry.memberIds = null;
+                version++;
+            }
+        }
+    }
+
+    private static void remove(Sector sector, int id) {
+        if (sector.members.get(id)) {
+            sector.members.clear(id);
+            sector.memberIds = null;
+        }
+    }
+
+    /**
+     * Ids of every stock in the sector, including those of its sub-sectors, in id order.
+     * The array is shared and must not be modified.
+     */
+    public int[] getMemberIds(String sector) {
+        Sector entry = sector(sector);
+        if (entry.memberIds == null) {
+            entry.memberIds = entry.members.stream().toArray();
+        }
+        return entry.memberIds;
+    }
+
+    public boolean isMember(String sector, String symbol) {
+        Integer id = stockIds.get(symbol);
+        return id != null && sector(sector).members.get(id);
+    }
+
+    public int getStockId(String symbol) {
+        Integer id = stockIds.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    public String getSymbol(int stockId) {
+        return symbols.get(stockId);
+    }
+
+    public int getStockCount() {
+        return symbols.size();
+    }
+
+    // The sector a stock was registered with, or null for an unknown stock
+    public String getHomeSector(String symbol) {
+        Integer id = stockIds.get(symbol);
+        return id == null ? null : homeSectors.get(id);
+    }
+
+    // The sector a sector is nested in, or null for MARKET
+    public String getParent(String sector) {
+        return sector(sector).parent;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    // Direct sub-sectors in definition order; MARKET gives the top-level sectors
+    public List<String> getChildren(String sector) {
+        return Collections.unmodifiableList(sector(sector).children);
+    }
+
+    public boolean hasSector(String sector) {
+        return sectors.containsKey(sector);
+    }
+
+    private Sector sector(String sector) {
+        Sector entry = sectors.get(sector);
+        if (entry == null) {
+            throw new IllegalArgumentException("Sector " + sector + " not defined");
+        }
+        return entry;
+    }
+}
@@ -6,6 +6,7 @@ import net.minecraftforge.common.util.INBTSerializable;
 public class Stock implements INBTSerializable<CompoundTag> {
     private final String symbol;
     private final String name;
+    private final String sector; // Home sector in the SectorRegistry
     private double currentPrice;
     private double previousPrice;
     private double highPrice;
@@ -13,8 +14,13 @@ public class Stock implements INBTSerializable<CompoundTag> {
     private long volume;
 
     public Stock(String symbol, String name, double initialPrice) {
+        this(symbol, name, SectorRegistry.MARKET, initialPrice);
+    }
+
+    public Stock(String symbol, String name, String sector, double initialPrice) {
         this.symbol = symbol;
         this.name = name;
+        this.sector = sector;
         this.currentPrice = initialPrice;
         this.previousPrice = initialPrice;
         this.highPrice = initialPrice;
@@ -30,6 +36,10 @@ public class Stock implements INBTSerializable<CompoundTag> {
         return name;
     }
 
+    public String getSector() {
+        return sector;
+    }
+
     public double getCurrentPrice() {
         return currentPrice;
     }
@@ -74,6 +84,7 @@ public class Stock implements INBTSerializable<CompoundTag> {
         CompoundTag tag = new CompoundTag();
         tag.putString("symbol", symbol);
         tag.putString("name", name);
+        tag.putString("sector", sector);
         tag.putDouble("currentPrice", currentPrice);
         tag.putDouble("previousPrice", previousPrice);
         tag.putDouble("highPrice", highPrice);
@@ -84,7 +95,7 @@ public class Stock implements INBTSerializable<CompoundTag> {
 
     @Override
     public void deserializeNBT(CompoundTag tag) {
-        // symbol and name are final and set in constructor
+        // symbol, name and sector are final and set in constructor
         currentPrice = tag.getDouble("currentPrice");
         previousPrice = tag.getDouble("previousPrice");
         highPrice = tag.getDouble("highPrice");
@@ -0,0 +1,53 @@
+package com.stockmarketmod.model;
+
+/**
+ * A listed stock as defined by a datapack: what the market starts it at and how it moves.
+ */
+public class StockDefinition {
+    private final String symbol;
+    private final String name;
+    private final String sector;
+    private final double basePrice;
+    private final double volatility; // Per step of the price model; NaN uses the configured default
+    private final double tickSize;
+
+    public StockDefinition(String symbol, String name, String sector, double basePrice, double volatility, double tickSize) {
+        if (basePrice <= 0 || tickSize <= 0 || volatility < 0) {
+            throw new IllegalArgumentException("Invalid definition for stock " + symbol);
+        }
+        this.symbol = symbol;
+        this.name = name;
+        this.sector = sector;
+        this.basePrice = basePrice;
+        this.volatility = volatility;
+        this.tickSize = tickSize;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSector() {
+        return sector;
+    }
+
+    public double getBasePrice() {
+        return basePrice;
+    }
+
+    public boolean hasVolatility() {
+        return !Double.isNaN(volatility);
+    }
+
+    public double getVolatility() {
+        return volatility;
+    }
+
+    public double getTickSize() {
+        return tickSize;
+    }
+}
@@ -0,0 +1,55 @@
+package com.stockmarketmod.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Every sector and stock defined by the loaded datapacks, in definition order, so that a
+ * sector always comes after its parent.
+ */
+public class StockUniverse {
+    public static final StockUniverse EMPTY = new StockUniverse();
+
+    private final Map<String, String> sectors = new LinkedHashMap<>(); // Sector to parent
+    private final Map<String, StockDefinition> stocks = new LinkedHashMap<>();
+
+    /**
+     * Defines a sector under a parent defined before it, or under {@link SectorRegistry#MARKET}.
+     * Defining a sector again with the same parent does nothing.
+     */
+    public void defineSector(String sector, String parent) {
+        if (!parent.equals(SectorRegistry.MARKET) && !sectors.containsKey(parent)) {
+            throw new IllegalArgumentException("Sector " + parent + " not defined");
+        }
+        String existing = sectors.putIfAbsent(sector, parent);
+        if (existing != null && !existing.equals(parent)) {
+            throw new IllegalArgumentException("Sector " + sector + " already defined under " + existing);
+        }
+    }
+
+    // A later definition of the same symbol replaces the earlier one
+    public void addStock(StockDefinition stock) {
+        if (!stock.getSector().equals(SectorRegistry.MARKET) && !sectors.containsKey(stock.getSector())) {
+            throw new IllegalArgumentException("Sector " + stock.getSector() + " not defined");
+        }
+        stocks.put(stock.getSymbol(), stock);
+    }
+
+    public Map<String, String> getSectors() {
+        return Collections.unmodifiableMap(sectors);
+    }
+
+    public Collection<StockDefinition> getStocks() {
+        return Collections.unmodifiableCollection(stocks.values());
+    }
+
+    public StockDefinition getStock(String symbol) {
+        return stocks.get(symbol);
+    }
+
+    public int size() {
+        return stocks.size();
+    }
+}
@@ -0,0 +1,155 @@
+package com.stockmarketmod.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interns the symbols of a market to dense int ids and keeps their pricing state in
+ * primitive columns indexed by id.
+ * <p>
+ * The columns are split into fixed-size pages that are never reallocated, so registering
+ * a symbol never moves state another thread is updating, and a sweep over all symbols runs
+ * through plain arrays. A symbol's values are guarded by the lock of its book.
+ * <p>
+ * Listing a symbol only fills in its columns. Its order book is created on first use,
+ * under the table's monitor, so a symbol nobody trades or looks at costs a few array
+ * entries. Code that works on a symbol without a book holds the monitor instead of a
+ * book lock, which also keeps the book from being created meanwhile.
+ */
+final class SymbolTable {
+    static final int PAGE_BITS = 8;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final BookFactory factory;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<String, OrderBook> books = new ConcurrentHashMap<>(); // Only books already created
+    private volatile Page[] pages = new Page[0];
+    private volatile int size; // Written last, so every id below it is fully registered
+
+    interface BookFactory {
+        OrderBook create(String symbol, double tickSize);
+    }
+
+    static final class Page {
+        final AtomicReferenceArray<OrderBook> books = new AtomicReferenceArray<>(PAGE_SIZE);
+        final String[] symbols = new String[PAGE_SIZE];
+        final double[] tickSize = new double[PAGE_SIZE];
+        final double[] basePrice = new double[PAGE_SIZE];
+        final double[] volatility = new double[PAGE_SIZE];
+        final long[] randomState = new long[PAGE_SIZE]; // Each symbol's own RandomStream state
+    }
+
+    SymbolTable(BookFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Lists a symbol, or resets one already listed while keeping its id. A reset symbol gets
+     * a fresh book on next use.
+     */
+    synchronized int register(String symbol, double tickSize, double basePrice, double volatility, long randomState) {
+        Integer existing = ids.get(symbol);
+        int id = existing != null ? existing : size;
+        if (id >>> PAGE_BITS == pages.length) {
+            Page[] grown = Arrays.copyOf(pages, pages.length + 1);
+            grown[pages.length] = new Page();
+            pages = grown;
+        }
+        Page page = page(id);
+        int slot = slot(id);
+        page.symbols[slot] = symbol;
+        page.tickSize[slot] = tickSize;
+        page.basePrice[slot] = basePrice;
+        page.volatility[slot] = volatility;
+        page.randomState[slot] = randomState;
+        page.books.set(slot, null);
+        books.remove(symbol);
+        ids.put(symbol, id);
+        if (id == size) {
+            size = id + 1;
+        }
+        return id;
+    }
+
+    // Puts a book restored from a save in place of the symbol's book
+    synchronized void restoreBook(OrderBook book) {
+        int id = ids.get(book.getSymbol());
+        book.symbolId = id;
+        page(id).books.set(slot(id), book);
+        books.put(book.getSymbol(), book);
+    }
+
+    synchronized void clear() {
+        ids.clear();
+        books.clear();
+        pages = new Page[0];
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // -1 if the symbol is not listed
+    int id(String symbol) {
+        Integer id = ids.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    // The symbol's book if it has been created, otherwise null
+    OrderBook existingBook(String symbol) {
+        return books.get(symbol);
+    }
+
+    /**
+     * The symbol's book, created on first use; null if the symbol is not listed.
+     */
+    OrderBook book(String symbol) {
+        OrderBook book = books.get(symbol);
+        if (book != null) {
+            return book;
+        }
+        synchronized (this) {
+            Integer id = ids.get(symbol);
+            if (id == null) {
+                return null;
+            }
+            Page page = page(id);
+            int slot = slot(id);
+            book = page.books.get(slot);
+            if (book == null) {
+                book = factory.create(symbol, page.tickSize[slot]);
+                book.symbolId = id;
+                page.books.set(slot, book);
+                books.put(symbol, book);
+            }
+            return book;
+        }
+    }
+
+    Map<String, OrderBook> books() {
+        return Collections.unmodifiableMap(books);
+    }
+
+    Set<String> symbols() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+
+    // Callers read size() first; the pages array then covers at least that many ids
+    Page[] pages() {
+        return pages;
+    }
+
+    Page page(int id) {
+        return pages[id >>> PAGE_BITS];
+    }
+
+    static int slot(int id) {
+        return id & PAGE_MASK;
+    }
+}
@@ -0,0 +1,140 @@
+package com.stockmarketmod.model;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Hierarchical timing wheel of order expiries, keyed by game tick.
+ * <p>
+ * Each level has 64 slots, and each slot of a level spans a whole turn of the level below,
+ * so four levels cover about 16 million ticks. An entry goes into the level of the highest
+ * 6-bit digit in which its deadline differs from the current tick. It moves down a level
+ * each time the wheel reaches its slot, and it fires once it reaches level 0. Scheduling
+ * and firing are O(1), and an entry is moved at most once per level. Entries are never
+ * removed early: an order that is filled or cancelled before its deadline simply finds
+ * nothing to cancel when it fires.
+ */
+final class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private final long[][][] ids = new long[LEVELS][SLOTS][];
+    private final long[][][] deadlines = new long[LEVELS][SLOTS][];
+    private final int[][] sizes = new int[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    synchronized void schedule(long id, long deadline) {
+        // Anything already due fires on the next tick
+        insert(id, Math.max(deadline, currentTick + 1));
+        size++;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized void clear() {
+        for (int[] levelSizes : sizes) {
+            Arrays.fill(levelSizes, 0);
+        }
+        size = 0;
+    }
+
+    /**
+     * Moves the wheel forward to the given tick, handing the id of every entry that fell due
+     * to the consumer. The consumer must not call back into the wheel.
+     */
+    synchronized void advance(long now, LongConsumer expired) {
+        if (size == 0) {
+            currentTick = Math.max(currentTick, now);
+            return;
+        }
+        if (now - currentTick > SLOTS) {
+            // Too far to walk tick by tick, say after a load; re-sort everything instead
+            rebuild(now, expired);
+            return;
+        }
+        while (currentTick < now) {
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = SLOT_BITS * level;
+                if ((currentTick & ((1L << shift) - 1)) == 0) {
+                    cascade(level, (int) ((currentTick >>> shift) & (SLOTS - 1)));
+                }
+            }
+
+            int slot = (int) (currentTick & (SLOTS - 1));
+            int count = sizes[0][slot];
+            long[] slotIds = ids[0][slot];
+            for (int i = 0; i < count; i++) {
+                expired.accept(slotIds[i]);
+            }
+            sizes[0][slot] = 0;
+            size -= count;
+        }
+    }
+
+    private void cascade(int level, int slot) {
+        int count = sizes[level][slot];
+        sizes[level][slot] = 0;
+        long[] slotIds = ids[level][slot];
+        long[] slotDeadlines = deadlines[level][slot];
+        for (int i = 0; i < count; i++) {
+            // Entries only ever move to a lower level, never back into this slot
+            insert(slotIds[i], slotDeadlines[i]);
+        }
+    }
+
+    private void rebuild(long now, LongConsumer expired) {
+        long[] pendingIds = new long[size];
+        long[] pendingDeadlines = new long[size];
+        int count = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                int slotSize = sizes[level][slot];
+                if (slotSize > 0) {
+                    System.arraycopy(ids[level][slot], 0, pendingIds, count, slotSize);
+                    System.arraycopy(deadlines[level][slot], 0, pendingDeadlines, count, slotSize);
+                    count += slotSize;
+                    sizes[level][slot] = 0;
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, now);
+        size = 0;
+        for (int i = 0; i < count; i++) {
+            if (pendingDeadlines[i] <= currentTick) {
+                expired.accept(pendingIds[i]);
+            } else {
+                insert(pendingIds[i], pendingDeadlines[i]);
+                size++;
+            }
+        }
+    }
+
+    private void insert(long id, long deadline) {
+        long difference = deadline ^ currentTick;
+        int level = difference == 0 ? 0 : (63 - Long.numberOfLeadingZeros(difference)) / SLOT_BITS;
+        long slotTick = deadline;
+        if (level >= LEVELS) {
+            // Beyond the top level: park it in the top slot reached last; it is re-sorted from there
+            level = LEVELS - 1;
+            slotTick = currentTick - (1L << (SLOT_BITS * level));
+        }
+        int slot = (int) ((slotTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+
+        int count = sizes[level][slot];
+        if (ids[level][slot] == null) {
+            ids[level][slot] = new long[8];
+            deadlines[level][slot] = new long[8];
+        } else if (count == ids[level][slot].length) {
+            ids[level][slot] = Arrays.copyOf(ids[level][slot], count * 2);
+            deadlines[level][slot] = Arrays.copyOf(deadlines[level][slot], count * 2);
+        }
+        ids[level][slot][count] = id;
+        deadlines[level][slot][count] = deadline;
+        sizes[level][slot] = count + 1;
+    }
+}
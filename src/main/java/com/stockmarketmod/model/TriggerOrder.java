@@ -0,0 +1,68 @@
+package com.stockmarketmod.model;
+
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.UUID;
+
+/**
+ * An order that waits outside the book until the last trade price reaches its trigger price.
+ * <p>
+ * Stop-loss and take-profit orders are released as immediate-or-cancel market orders;
+ * stop-limit orders are released as ordinary limit orders. Stops fire when the price moves
+ * against the order's side (a sell stop on a fall, a buy stop on a rise), take-profits
+ * when it moves in its favour.
+ */
+public class TriggerOrder {
+    private final TriggerType triggerType;
+    private final double triggerPrice;
+    private final Order order;
+    long triggerTick; // Set by the book the trigger is placed in
+
+    public enum TriggerType {
+        STOP_LOSS,
+        STOP_LIMIT,
+        TAKE_PROFIT
+    }
+
+    /**
+     * @param limitPrice only used by stop-limit orders
+     */
+    public TriggerOrder(UUID playerId, String symbol, Order.OrderType side, TriggerType triggerType,
+                        double triggerPrice, double limitPrice, int quantity) {
+        this(triggerType, triggerPrice, triggerType == TriggerType.STOP_LIMIT
+            ? new Order(playerId, symbol, side, limitPrice, quantity)
+            : new Order(playerId, symbol, side, Order.OrderKind.MARKET, triggerPrice, quantity,
+                Order.TimeInForce.IMMEDIATE_OR_CANCEL));
+    }
+
+    TriggerOrder(TriggerType triggerType, double triggerPrice, Order order) {
+        this.triggerType = triggerType;
+        this.triggerPrice = triggerPrice;
+        this.order = order;
+    }
+
+    public TriggerType getTriggerType() {
+        return triggerType;
+    }
+
+    public double getTriggerPrice() {
+        return triggerPrice;
+    }
+
+    // The order released into the book once the trigger fires; its id also identifies the trigger
+    public Order getOrder() {
+        return order;
+    }
+
+    // True if the trigger fires when the price rises to it, false if it fires on a fall
+    public boolean firesOnRise() {
+        return (triggerType == TriggerType.TAKE_PROFIT) == (order.getType() == Order.OrderType.SELL);
+    }
+
+    public CompoundTag serializeNBT() {
+        CompoundTag tag = order.serializeNBT();
+        tag.putString("triggerType", triggerType.name());
+        tag.putDouble("triggerPrice", triggerPrice);
+        return tag;
+    }
+}
@@ -4,6 +4,7 @@ import com.mojang.logging.LogUtils;
 import com.stockmarketmod.model.Market;
 import com.stockmarketmod.model.Market.MarketDepth;
 import com.stockmarketmod.model.Market.PriceLevel;
+import com.stockmarketmod.model.MarketSnapshot;
 import com.stockmarketmod.model.Order;
 import com.stockmarketmod.model.Portfolio;
 import com.stockmarketmod.model.PortfolioItem;
@@ -25,7 +26,6 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 public class NasdaqTerminalScreen extends Screen {
     private static final Logger LOGGER = LogUtils.getLogger();
@@ -56,7 +56,7 @@ public class NasdaqTerminalScreen extends Screen {
     private int firstVisibleStockIndex = 0;
     private int firstVisiblePortfolioIndex = 0;
     
-    private final StockMarketService stockMarketService;
+    private final StockMarketService stockMarketService; // Null while the market is offline
     private Stock selectedStock = null;
     private int scrollOffset = 0;
     private boolean isScrolling = false;
@@ -89,8 +89,9 @@ public class NasdaqTerminalScreen extends Screen {
 
     public NasdaqTerminalScreen() {
         super(Component.literal("NASDAQ Terminal"));
-        this.stockMarketService = StockMarketService.getInstance();
-        this.market = stockMarketService.getMarket();
+        // Only a server in this game has a market; clients of a dedicated server show it offline
+        this.stockMarketService = StockMarketService.getRunningInstance();
+        this.market = stockMarketService != null ? stockMarketService.getMarket() : null;
         this.portfolio = null;
         
         this.imageWidth = SCREEN_WIDTH;
@@ -100,7 +101,7 @@ public class NasdaqTerminalScreen extends Screen {
     @Override
     public void init() {
         super.init();
-        if (minecraft != null && minecraft.player != null) {
+        if (minecraft != null && minecraft.player != null && !isOffline()) {
             this.portfolio = stockMarketService.getPortfolio(minecraft.player);
         }
         this.leftPos = (this.width - this.imageWidth) / 2;
@@ -162,7 +163,18 @@ public class NasdaqTerminalScreen extends Screen {
         .size(DEPOSIT_BUTTON_WIDTH, DEPOSIT_BUTTON_HEIGHT)
         .build();
         
-        addRenderableWidget(depositButton);
+        if (!isOffline()) {
+            addRenderableWidget(depositButton);
+        }
+    }
+
+    private boolean isOffline() {
+        return stockMarketService == null;
+    }
+
+    // The published quotes, or none while the market is offline
+    private MarketSnapshot snapshot() {
+        return isOffline() ? MarketSnapshot.EMPTY : stockMarketService.getSnapshot();
     }
 
     private void showTransactionPopup(String type) {
@@ -188,7 +200,7 @@ public class NasdaqTerminalScreen extends Screen {
     }
 
     private void handleTransaction() {
-        if (minecraft.player == null) return;
+        if (minecraft.player == null || isOffline()) return;
         
         try {
             int quantity = Integer.parseInt(quantityInput.getValue());
@@ -203,12 +215,12 @@ public class NasdaqTerminalScreen extends Screen {
                 stockMarketService.sellStock(minecraft.player, selectedStock.getSymbol(), quantity);
             }
             
-            // Place order in market
-            Market market = stockMarketService.getMarket();
-            if (market != null) {
-                Order.OrderType orderType = transactionType.equals("buy") ? Order.OrderType.BUY : Order.OrderType.SELL;
-                Order order = new Order(UUID.randomUUID(), minecraft.player.getUUID(), selectedStock.getSymbol(), orderType, selectedStock.getCurrentPrice(), quantity);
-                market.placeOrder(order);
+            // Place order in market; whatever the book cannot fill right away is dropped, not rested
+            Order.OrderType orderType = transactionType.equals("buy") ? Order.OrderType.BUY : Order.OrderType.SELL;
+            Order order = new Order(minecraft.player.getUUID(), selectedStock.getSymbol(), orderType, Order.OrderKind.MARKET,
+                stockMarketService.getMarkPrice(selectedStock.getSymbol()), quantity, Order.TimeInForce.IMMEDIATE_OR_CANCEL);
+            if (!stockMarketService.submitOrder(order)) {
+                LOGGER.warn("Order for {} rejected, matching engine is busy", selectedStock.getSymbol());
             }
             
             showTransactionPopup = false;
@@ -219,6 +231,7 @@ public class NasdaqTerminalScreen extends Screen {
 
     private void handleDeposit() {
         LOGGER.info("Confirm button clicked for deposit");
+        if (isOffline()) return;
         try {
             int quantity = Integer.parseInt(depositInput.getValue());
             LOGGER.info("Attempting to deposit {} emeralds", quantity);
@@ -320,6 +333,7 @@ public class NasdaqTerminalScreen extends Screen {
     }
 
     private void handleRefresh() {
+        if (isOffline()) return;
         stockMarketService.updateMarket(minecraft.level);
     }
 
@@ -393,42 +407,47 @@ public class NasdaqTerminalScreen extends Screen {
         
         // Draw stock rows
         int rowY = headerY + ROW_HEIGHT;
-        Map<String, Stock> stocks = stockMarketService.getAllStocks();
+        if (isOffline()) {
+            graphics.drawString(font, "Market offline: trading is only available on this game's own server",
+                x + 10, rowY + 2, 0xFF5555);
+            return;
+        }
+        // Published once per market update, so drawing every frame neither copies nor locks
+        MarketSnapshot stocks = stockMarketService.getSnapshot();
         
-        int index = 0;
-        for (Stock stock : stocks.values()) {
+        for (int index = 0; index < stocks.size(); index++) {
             if (index >= firstVisibleStockIndex && index < firstVisibleStockIndex + VISIBLE_ROWS) {
                 currentX = x + 10;
                 
                 // Draw row background (alternate colors)
                 int rowColor = (index % 2 == 0) ? 0xFF333333 : 0xFF383838;
-                if (stock == selectedStock) {
+                if (selectedStock != null && selectedStock.getSymbol().equals(stocks.getSymbol(index))) {
                     rowColor = 0xFF444499; // Highlight selected stock
                 }
                 graphics.fill(x + 1, rowY, x + imageWidth - 1, rowY + ROW_HEIGHT, rowColor);
                 
                 // Symbol
-                graphics.drawString(font, stock.getSymbol(), currentX, rowY + 2, 0xFFFFFF);
+                graphics.drawString(font, stocks.getSymbol(index), currentX, rowY + 2, 0xFFFFFF);
                 currentX += SYMBOL_WIDTH + COLUMN_SPACING;
                 
                 // Name
-                graphics.drawString(font, stock.getName(), currentX, rowY + 2, 0xFFFFFF);
+                graphics.drawString(font, stocks.getName(index), currentX, rowY + 2, 0xFFFFFF);
                 currentX += NAME_WIDTH + COLUMN_SPACING;
                 
                 // Price
-                String price = PRICE_FORMAT.format(stock.getCurrentPrice());
+                String price = PRICE_FORMAT.format(stocks.getPrice(index));
                 graphics.drawString(font, price, currentX, rowY + 2, 0xFFFFFF);
                 currentX += PRICE_WIDTH + COLUMN_SPACING;
                 
                 // Change
-                double change = stock.getPriceChange();
+                double change = stocks.getChange(index);
                 int changeColor = change >= 0 ? 0x00FF00 : 0xFF0000;
                 String changeStr = CHANGE_FORMAT.format(change);
                 graphics.drawString(font, changeStr, currentX, rowY + 2, changeColor);
                 currentX += CHANGE_WIDTH + COLUMN_SPACING;
                 
                 // Volume
-                String volume = String.format("%,d", stock.getVolume());
+                String volume = String.format("%,d", stocks.getVolume(index));
                 graphics.drawString(font, volume, currentX, rowY + 2, 0xFFFFFF);
                 
                 // Action buttons
@@ -455,7 +474,6 @@ public class NasdaqTerminalScreen extends Screen {
                 
                 rowY += ROW_HEIGHT;
             }
-            index++;
         }
     }
 
@@ -608,12 +626,12 @@ public class NasdaqTerminalScreen extends Screen {
         // Check if click is in market section
         if (mouseY >= y + HEADER_HEIGHT && mouseY < y + MARKET_SECTION_HEIGHT) {
             int rowY = y + HEADER_HEIGHT + ROW_HEIGHT;
-            Map<String, Stock> stocks = stockMarketService.getAllStocks();
+            MarketSnapshot stocks = snapshot();
             
-            int index = 0;
-            for (Stock stock : stocks.values()) {
+            for (int index = 0; index < stocks.size(); index++) {
                 if (index >= firstVisibleStockIndex && index < firstVisibleStockIndex + VISIBLE_ROWS) {
                     if (mouseY >= rowY && mouseY < rowY + ROW_HEIGHT) {
+                        Stock stock = stockMarketService.getStock(stocks.getSymbol(index));
                         // Calculate button positions
                         int buttonX = x + imageWidth - ACTIONS_WIDTH - COLUMN_SPACING;
                         
@@ -640,7 +658,6 @@ public class NasdaqTerminalScreen extends Screen {
                     }
                     rowY += ROW_HEIGHT;
                 }
-                index++;
             }
         }
         
@@ -658,8 +675,7 @@ public class NasdaqTerminalScreen extends Screen {
     @Override
     public boolean mouseDragged(double mouseX, double mouseY, int button, double dragX, double dragY) {
         if (isScrolling) {
-            Map<String, Stock> stocks = stockMarketService.getAllStocks();
-            int totalStocks = stocks.size();
+            int totalStocks = snapshot().size();
             
             // Calculate drag amount in terms of rows
             int deltaY = (int)mouseY - lastMouseY;
@@ -678,8 +694,7 @@ public class NasdaqTerminalScreen extends Screen {
 
     @Override
     public boolean mouseScrolled(double mouseX, double mouseY, double delta) {
-        Map<String, Stock> stocks = stockMarketService.getAllStocks();
-        int totalStocks = stocks.size();
+        int totalStocks = snapshot().size();
         
         // Update firstVisibleStockIndex based on scroll direction
         if (delta > 0) { // Scrolling up
@@ -0,0 +1,180 @@
+package com.stockmarketmod.service;
+
+import com.stockmarketmod.model.Market;
+import com.stockmarketmod.model.Order;
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Synthetic liquidity provider that keeps a fixed ladder of quotes on each side of every book.
+ * <p>
+ * Each symbol has one quote slot per level and side. Every requote amends the order already
+ * sitting in a slot to the new price and size, and only places a new order when the old one
+ * has traded away or expired, so the number of simulated orders in a book never grows.
+ */
+public class MarketMaker {
+    public static final int DEFAULT_LEVELS = 5;
+    public static final double DEFAULT_SPREAD = 0.01;     // Between the best bid and best ask, as a fraction of the price
+    public static final double DEFAULT_LEVEL_STEP = 0.01; // Between neighbouring levels, as a fraction of the price
+    public static final int DEFAULT_SIZE = 50;
+
+    private final Market market;
+    private final UUID traderId;
+    private final Map<String, Order[]> bids = new HashMap<>();
+    private final Map<String, Order[]> asks = new HashMap<>();
+    private MatchingEngine engine; // Quotes go through the engine while it is running
+    private int levels = DEFAULT_LEVELS;
+    private double spread = DEFAULT_SPREAD;
+    private double levelStep = DEFAULT_LEVEL_STEP;
+    private int size = DEFAULT_SIZE;
+
+    public MarketMaker(Market market, UUID traderId) {
+        this.market = market;
+        this.traderId = traderId;
+    }
+
+    public void configure(int levels, double spread, double levelStep, int size) {
+        if (levels < 0 || spread < 0 || levelStep < 0 || size <= 0) {
+            throw new IllegalArgumentException("Invalid market maker settings");
+        }
+        this.levels = levels;
+        this.spread = spread;
+        this.levelStep = levelStep;
+        this.size = size;
+    }
+
+    public void setEngine(MatchingEngine engine) {
+        this.engine = engine;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Moves every quote for the symbol to the ladder around the given mid price.
+     */
+    public void requote(String symbol, double midPrice) {
+        Order[] bidSlots = slots(bids, symbol);
+        Order[] askSlots = slots(asks, symbol);
+        // The side moving away from the other goes first, so new bids never meet old asks or
+        // the other way around
+        Order bestBid = levels > 0 ? bidSlots[0] : null;
+        boolean rising = isResting(bestBid) && midPrice * (1.0 - spread / 2) > bestBid.getPrice();
+        if (rising) {
+            requoteSide(symbol, askSlots, Order.OrderType.SELL, midPrice);
+            requoteSide(symbol, bidSlots, Order.OrderType.BUY, midPrice);
+        } else {
+            requoteSide(symbol, bidSlots, Order.OrderType.BUY, midPrice);
+            requoteSide(symbol, askSlots, Order.OrderType.SELL, midPrice);
+        }
+    }
+
+    private void requoteSide(String symbol, Order[] slots, Order.OrderType side, double midPrice) {
+        double sign = side == Order.OrderType.BUY ? -1.0 : 1.0;
+        for (int level = 0; level < levels; level++) {
+            double offset = spread / 2 + level * levelStep;
+            requote(symbol, slots, level, side, midPrice * (1.0 + sign * offset));
+        }
+    }
+
+    private Order[] slots(Map<String, Order[]> side, String symbol) {
+        Order[] slots = side.get(symbol);
+        if (slots == null || slots.length != levels) {
+            // Levels were reconfigured; withdraw the quotes that no longer have a slot
+            Order[] resized = slots == null ? new Order[levels] : Arrays.copyOf(slots, levels);
+            for (int level = levels; slots != null && level < slots.length; level++) {
+                if (isResting(slots[level])) {
+                    cancel(slots[level].getOrderId());
+                }
+            }
+            slots = resized;
+            side.put(symbol, slots);
+        }
+        return slots;
+    }
+
+    private void requote(String symbol, Order[] slots, int level, Order.OrderType side, double price) {
+        Order quote = slots[level];
+        if (quote != null && quote.getOrderId() == Order.NO_ID) {
+            // Still waiting in the engine's queue; leave it be until it has reached the book
+            return;
+        }
+        if (isResting(quote)) {
+            // If the engine is too busy to take the amendment, the quote just stays where it was
+            amend(quote.getOrderId(), price);
+            return;
+        }
+        Order fresh = new Order(traderId, symbol, side, price, size);
+        slots[level] = add(fresh) ? fresh : null;
+    }
+
+    private boolean isResting(Order quote) {
+        return quote != null && quote.getOrderId() != Order.NO_ID && market.getOrder(quote.getOrderId()) == quote;
+    }
+
+    private void amend(long orderId, double price) {
+        if (engine != null) {
+            engine.amendOrder(orderId, price, size);
+        } else {
+            market.amendOrder(orderId, price, size);
+        }
+    }
+
+    private boolean add(Order order) {
+        if (engine != null) {
+            return engine.addOrder(order);
+        }
+        market.addOrder(order);
+        return true;
+    }
+
+    private void cancel(long orderId) {
+        if (engine != null) {
+            engine.cancelOrder(orderId);
+        } else {
+            market.cancelOrder(orderId);
+        }
+    }
+
+    public CompoundTag serializeNBT() {
+        CompoundTag tag = new CompoundTag();
+        CompoundTag bidsTag = new CompoundTag();
+        CompoundTag asksTag = new CompoundTag();
+        bids.forEach((symbol, slots) -> bidsTag.putLongArray(symbol, quoteIds(slots)));
+        asks.forEach((symbol, slots) -> asksTag.putLongArray(symbol, quoteIds(slots)));
+        tag.put("bids", bidsTag);
+        tag.put("asks", asksTag);
+        return tag;
+    }
+
+    // Re-attaches to the quotes of a restored market, so they are amended rather than duplicated
+    public void deserializeNBT(CompoundTag tag) {
+        restoreQuotes(bids, tag.getCompound("bids"));
+        restoreQuotes(asks, tag.getCompound("asks"));
+    }
+
+    private static long[] quoteIds(Order[] slots) {
+        long[] ids = new long[slots.length];
+        for (int level = 0; level < slots.length; level++) {
+            ids[level] = slots[level] == null ? Order.NO_ID : slots[level].getOrderId();
+        }
+        return ids;
+    }
+
+    private void restoreQuotes(Map<String, Order[]> side, CompoundTag sideTag) {
+        side.clear();
+        for (String symbol : sideTag.getAllKeys()) {
+            long[] ids = sideTag.getLongArray(symbol);
+            Order[] slots = new Order[ids.length];
+            for (int level = 0; level < ids.length; level++) {
+                slots[level] = ids[level] == Order.NO_ID ? null : market.getOrder(ids[level]);
+            }
+            side.put(symbol, slots);
+        }
+    }
+}
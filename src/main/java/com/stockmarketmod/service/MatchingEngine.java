@@ -0,0 +1,365 @@
+package com.stockmarketmod.service;
+
+import com.stockmarketmod.model.Market;
+import com.stockmarketmod.model.Order;
+import com.stockmarketmod.model.TriggerOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs all order handling for a {@link Market} on one dedicated thread.
+ * <p>
+ * Any thread may submit commands; they go into a bounded lock-free multi-producer ring
+ * and are applied in order by the engine thread, which is then the only thread that
+ * touches the market's order books. Fills reach the market's fill listeners on the
+ * engine thread, and the top of every book is republished as an immutable map after
+ * each batch of commands.
+ */
+public class MatchingEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MatchingEngine.class);
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private static final int PLACE_ORDER = 1;
+    private static final int ADD_ORDER = 2;
+    private static final int CANCEL_ORDER = 3;
+    private static final int AMEND_ORDER = 4;
+    private static final int BEGIN_AUCTION = 5;
+    private static final int END_AUCTION = 6;
+    private static final int GAME_TICK = 7;
+    private static final int PLACE_TRIGGER = 8;
+
+    private final Market market;
+
+    // Command ring: a slot holding sequence s is free for s, and readable once it holds s + 1
+    private final int mask;
+    private final AtomicLongArray slotSequences;
+    private final int[] kinds;
+    private final Order[] orders;
+    private final TriggerOrder[] triggers;
+    private final double[] prices;
+    private final int[] quantities;
+    private final long[] values; // Order id or game tick, depending on the command
+    private final AtomicLong claimSequence = new AtomicLong();
+    private long consumeSequence; // Engine thread only
+
+    private final ReentrantLock marketLock = new ReentrantLock(); // Held by the engine while it applies a batch
+    private final Map<String, Market.DepthSnapshot> depthScratch = new HashMap<>();
+    // Books the current batch may have changed; engine thread only
+    private final Set<String> touchedSymbols = new HashSet<>();
+    private boolean touchedAll;
+    private volatile Map<String, BookTop> bookTops = Collections.emptyMap();
+    private volatile long processedCommands;
+    private volatile boolean running;
+    private volatile boolean idle;
+    private Thread thread;
+
+    public MatchingEngine(Market market) {
+        this(market, DEFAULT_CAPACITY);
+    }
+
+    public MatchingEngine(Market market, int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Command ring capacity must be a power of two: " + capacity);
+        }
+        this.market = market;
+        this.mask = capacity - 1;
+        this.slotSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slotSequences.set(i, i);
+        }
+        this.kinds = new int[capacity];
+        this.orders = new Order[capacity];
+        this.triggers = new TriggerOrder[capacity];
+        this.prices = new double[capacity];
+        this.quantities = new int[capacity];
+        this.values = new long[capacity];
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::run, "StockMarket Matching Engine");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("Matching engine started");
+    }
+
+    // Stops the engine thread after it has applied every command submitted so far
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        LOGGER.info("Matching engine stopped after {} commands", processedCommands);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public Market getMarket() {
+        return market;
+    }
+
+    // All submit methods return false when the command ring is full
+    public boolean placeOrder(Order order) {
+        return publish(PLACE_ORDER, order, null, 0, 0, 0);
+    }
+
+    public boolean addOrder(Order order) {
+        return publish(ADD_ORDER, order, null, 0, 0, 0);
+    }
+
+    public boolean cancelOrder(long orderId) {
+        return publish(CANCEL_ORDER, null, null, 0, 0, orderId);
+    }
+
+    public boolean amendOrder(long orderId, double newPrice, int newQuantity) {
+        return publish(AMEND_ORDER, null, null, newPrice, newQuantity, orderId);
+    }
+
+    public boolean beginAuction() {
+        return publish(BEGIN_AUCTION, null, null, 0, 0, 0);
+    }
+
+    public boolean endAuction() {
+        return publish(END_AUCTION, null, null, 0, 0, 0);
+    }
+
+    public boolean setGameTick(long gameTick) {
+        return publish(GAME_TICK, null, null, 0, 0, gameTick);
+    }
+
+    public boolean placeTrigger(TriggerOrder trigger) {
+        return publish(PLACE_TRIGGER, null, trigger, 0, 0, 0);
+    }
+
+    /**
+     * Runs an action against the market while the engine is between batches, for the rare
+     * cases that need a consistent view of the whole market, such as saving.
+     */
+    public <T> T callLocked(Supplier<T> action) {
+        marketLock.lock();
+        try {
+            return action.get();
+        } finally {
+            marketLock.unlock();
+        }
+    }
+
+    public Map<String, BookTop> getBookTops() {
+        return bookTops;
+    }
+
+    public long getProcessedCommands() {
+        return processedCommands;
+    }
+
+    private boolean publish(int kind, Order order, TriggerOrder trigger, double price, int quantity, long value) {
+        long sequence;
+        int index;
+        while (true) {
+            sequence = claimSequence.get();
+            index = (int) (sequence & mask);
+            long slotSequence = slotSequences.get(index);
+            if (slotSequence == sequence) {
+                if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+                    break;
+                }
+            } else if (slotSequence < sequence) {
+                return false; // Ring is full
+            }
+        }
+
+        kinds[index] = kind;
+        orders[index] = order;
+        triggers[index] = trigger;
+        prices[index] = price;
+        quantities[index] = quantity;
+        values[index] = value;
+        slotSequences.set(index, sequence + 1);
+
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    private void run() {
+        while (running) {
+            if (drain(BATCH_SIZE) == 0) {
+                idle = true;
+                // Re-check after announcing we are idle so a concurrent submit is not missed
+                if (drain(BATCH_SIZE) == 0 && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+        while (drain(BATCH_SIZE) > 0) {
+            // Apply whatever was submitted before stop()
+        }
+    }
+
+    private int drain(int limit) {
+        marketLock.lock();
+        try {
+            return drainLocked(limit);
+        } finally {
+            marketLock.unlock();
+        }
+    }
+
+    private int drainLocked(int limit) {
+        int count = 0;
+        while (count < limit) {
+            long sequence = consumeSequence;
+            int index = (int) (sequence & mask);
+            if (slotSequences.get(index) != sequence + 1) {
+                break;
+            }
+
+            int kind = kinds[index];
+            Order order = orders[index];
+            TriggerOrder trigger = triggers[index];
+            double price = prices[index];
+            int quantity = quantities[index];
+            long value = values[index];
+            orders[index] = null;
+            triggers[index] = null;
+            slotSequences.set(index, sequence + mask + 1);
+            consumeSequence = sequence + 1;
+
+            try {
+                apply(kind, order, trigger, price, quantity, value);
+            } catch (RuntimeException e) {
+                LOGGER.error("Matching engine rejected command {}", kind, e);
+            }
+            count++;
+        }
+        if (count > 0) {
+            processedCommands += count;
+            publishBookTops();
+        }
+        return count;
+    }
+
+    private void apply(int kind, Order order, TriggerOrder trigger, double price, int quantity, long value) {
+        switch (kind) {
+            case PLACE_ORDER -> {
+                touchedSymbols.add(order.getSymbol());
+                market.placeOrder(order);
+            }
+            case ADD_ORDER -> {
+                touchedSymbols.add(order.getSymbol());
+                market.addOrder(order);
+            }
+            case CANCEL_ORDER -> {
+                touch(value);
+                market.cancelOrder(value);
+            }
+            case AMEND_ORDER -> {
+                touch(value);
+                market.amendOrder(value, price, quantity);
+            }
+            case BEGIN_AUCTION -> market.beginAuction();
+            case END_AUCTION -> {
+                // Every book that collected orders may have traded
+                touchedAll = true;
+                market.endAuction();
+            }
+            case GAME_TICK -> touchedAll |= market.setGameTick(value) > 0;
+            case PLACE_TRIGGER -> {
+                touchedSymbols.add(trigger.getOrder().getSymbol());
+                market.placeTrigger(trigger);
+            }
+            default -> throw new IllegalStateException("Unknown command " + kind);
+        }
+    }
+
+    private void touch(long orderId) {
+        Order order = market.getOrder(orderId);
+        if (order != null) {
+            touchedSymbols.add(order.getSymbol());
+        }
+    }
+
+    // Rebuilds the published top-of-book map from the books the batch touched, if any changed
+    private void publishBookTops() {
+        Iterable<String> symbols = touchedAll ? market.getOrderBooks().keySet() : touchedSymbols;
+        Map<String, BookTop> previous = bookTops;
+        Map<String, BookTop> next = null;
+        for (String symbol : symbols) {
+            if (!market.hasOrderBook(symbol)) {
+                continue;
+            }
+            Market.DepthSnapshot snapshot = depthScratch.computeIfAbsent(symbol, s -> new Market.DepthSnapshot(1));
+            long version = market.copyDepth(symbol, snapshot);
+            BookTop top = previous.get(symbol);
+            if (top != null && top.version == version) {
+                continue;
+            }
+            if (next == null) {
+                next = new HashMap<>(previous);
+            }
+            next.put(symbol, new BookTop(
+                snapshot.getBidLevels() > 0 ? snapshot.getBidPrice(0) : 0,
+                snapshot.getAskLevels() > 0 ? snapshot.getAskPrice(0) : 0,
+                snapshot.getLastTradePrice(),
+                version));
+        }
+        if (next != null) {
+            bookTops = Collections.unmodifiableMap(next);
+        }
+        touchedSymbols.clear();
+        touchedAll = false;
+    }
+
+    public static class BookTop {
+        private final double bestBid;
+        private final double bestAsk;
+        private final double lastTradePrice;
+        private final long version;
+
+        public BookTop(double bestBid, double bestAsk, double lastTradePrice, long version) {
+            this.bestBid = bestBid;
+            this.bestAsk = bestAsk;
+            this.lastTradePrice = lastTradePrice;
+            this.version = version;
+        }
+
+        public double getBestBid() {
+            return bestBid;
+        }
+
+        public double getBestAsk() {
+            return bestAsk;
+        }
+
+        public double getLastTradePrice() {
+            return lastTradePrice;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.stockmarketmod.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.stockmarketmod.manager.MarketManager;
+import com.stockmarketmod.model.OrderBook;
+import com.stockmarketmod.model.SectorRegistry;
+import com.stockmarketmod.model.StockDefinition;
+import com.stockmarketmod.model.StockUniverse;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.server.packs.resources.SimpleJsonResourceReloadListener;
+import net.minecraft.util.GsonHelper;
+import net.minecraft.util.profiling.ProfilerFiller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Loads the stock universe from the {@code stocks} folder of every datapack, e.g.
+ * {@code data/stockmarketmod/stocks/default.json}:
+ * <pre>
+ * {
+ *   "sectors": [{"id": "mining"}, {"id": "gems", "parent": "mining"}],
+ *   "stocks": [{"symbol": "DIAM", "name": "Diamond Corp", "sector": "gems",
+ *               "base_price": 100.0, "volatility": 0.03, "tick_size": 0.01}]
+ * }
+ * </pre>
+ * Files are read in resource location order, and a later definition of a symbol replaces
+ * an earlier one. {@code volatility} and {@code tick_size} are optional.
+ */
+public class StockDefinitionLoader extends SimpleJsonResourceReloadListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StockDefinitionLoader.class);
+    private static final Gson GSON = new GsonBuilder().create();
+
+    public StockDefinitionLoader() {
+        super(GSON, "stocks");
+    }
+
+    @Override
+    protected void apply(Map<ResourceLocation, JsonElement> files, ResourceManager resourceManager, ProfilerFiller profiler) {
+        StockUniverse universe = new StockUniverse();
+        for (Map.Entry<ResourceLocation, JsonElement> file : new TreeMap<>(files).entrySet()) {
+            try {
+                read(universe, GsonHelper.convertToJsonObject(file.getValue(), "stocks"));
+            } catch (RuntimeException e) {
+                LOGGER.error("Skipping the rest of stock definitions {}: {}", file.getKey(), e.getMessage());
+            }
+        }
+        LOGGER.info("Loaded {} stock definitions", universe.size());
+        StockMarketService.setUniverse(universe);
+        MarketManager.refreshUniverse(universe);
+    }
+
+    private static void read(StockUniverse universe, JsonObject json) {
+        for (JsonElement element : GsonHelper.getAsJsonArray(json, "sectors", new JsonArray())) {
+            JsonObject sector = GsonHelper.convertToJsonObject(element, "sector");
+            universe.defineSector(GsonHelper.getAsString(sector, "id"),
+                GsonHelper.getAsString(sector, "parent", SectorRegistry.MARKET));
+        }
+        for (JsonElement element : GsonHelper.getAsJsonArray(json, "stocks", new JsonArray())) {
+            JsonObject stock = GsonHelper.convertToJsonObject(element, "stock");
+            String symbol = GsonHelper.getAsString(stock, "symbol");
+            universe.addStock(new StockDefinition(
+                symbol,
+                GsonHelper.getAsString(stock, "name", symbol),
+                GsonHelper.getAsString(stock, "sector", SectorRegistry.MARKET),
+                GsonHelper.getAsDouble(stock, "base_price"),
+                stock.has("volatility") ? GsonHelper.getAsDouble(stock, "volatility") : Double.NaN,
+                GsonHelper.getAsDouble(stock, "tick_size", OrderBook.DEFAULT_TICK_SIZE)));
+        }
+    }
+}
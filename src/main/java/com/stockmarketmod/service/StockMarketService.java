@@ -1,10 +1,20 @@
 package com.stockmarketmod.service;
 
+import com.stockmarketmod.model.CandleHistory;
+import com.stockmarketmod.model.FactorModel;
 import com.stockmarketmod.model.Market;
 import com.stockmarketmod.model.MarketHistory;
+import com.stockmarketmod.model.MarketSnapshot;
 import com.stockmarketmod.model.Portfolio;
+import com.stockmarketmod.model.PriceEngine;
 import com.stockmarketmod.model.Stock;
 import com.stockmarketmod.model.Order;
+import com.stockmarketmod.model.OrderBook;
+import com.stockmarketmod.model.RandomStream;
+import com.stockmarketmod.model.SectorRegistry;
+import com.stockmarketmod.model.StockDefinition;
+import com.stockmarketmod.model.StockUniverse;
+import com.stockmarketmod.model.TriggerOrder;
 import com.stockmarketmod.sound.ModSounds;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
@@ -18,64 +28,147 @@ import net.minecraft.world.level.Level;
 import net.minecraft.world.level.saveddata.SavedData;
 import net.minecraft.world.level.storage.DimensionDataStorage;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class StockMarketService extends SavedData {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StockMarketService.class);
     private static final String DATA_NAME = "stock_market_data";
+    // Market maker quotes are booked to one fixed account rather than a fresh random player per order
+    private static final UUID SIMULATED_TRADER = new UUID(0L, 1L);
+    private static final double BOOK_VOLATILITY = 0.1; // Of Market.updatePrices, which the service never runs; its prices are the marks
     private static StockMarketService INSTANCE;
+    // Stock definitions of the loaded datapacks, see StockDefinitionLoader
+    private static volatile StockUniverse universe = StockUniverse.EMPTY;
     private final Map<String, Stock> stocks = new HashMap<>();
+    private final SectorRegistry sectors = new SectorRegistry();
+    private final List<Stock> stocksById = new ArrayList<>(); // Indexed by SectorRegistry stock id
+    private final FactorModel priceModel = new FactorModel(sectors);
+    // Owns every stock's mark price; Stock.currentPrice holds the mark as of the last update
+    private final PriceEngine priceEngine = new PriceEngine();
+    private double[] simulatedPrices = new double[0];         // Scratch for priceModel, by stock id
+    private RandomStream[] simulatedStreams = new RandomStream[0];
     private final Map<UUID, Portfolio> portfolios = new HashMap<>();
     private final MarketHistory marketHistory = new MarketHistory();
-    private final Random random = new Random();
+    private final CandleHistory candles = new CandleHistory(); // Bars from fills and price updates
+    // Stocks looked at or traded since the last update, to get a book and a history then
+    private final Set<String> pendingActivations = ConcurrentHashMap.newKeySet();
+    // Every random stream is split from the world seed: one for market events, one per stock
+    private final long seed;
+    private final RandomStream eventRandom;
+    private final RandomStream factorRandom; // Market and sector shocks of the price model
+    private final Map<String, RandomStream> stockRandom = new HashMap<>();
     private long lastUpdateTime = 0;
     private static final long UPDATE_INTERVAL = 20 * 60; // 1 minute in ticks
     private static final double EVENT_CHANCE = 0.1; // 10% chance of market event
     private Market market;
+    private MatchingEngine engine; // Owns all order handling while running
+    private MarketMaker marketMaker;
+    // Quotes as of the last update, replaced whole so readers on any thread need no lock
+    private volatile MarketSnapshot snapshot = MarketSnapshot.EMPTY;
+    private final Market.DepthSnapshot depthScratch = new Market.DepthSnapshot(1);
 
-    private StockMarketService() {
-        initializeStocks();
+    private StockMarketService(long seed) {
+        this.seed = seed;
+        this.eventRandom = new RandomStream(seed).split("events");
+        this.factorRandom = new RandomStream(seed).split("factors");
         initializeMarket();
+        applyDefinitions(universe);
+    }
+
+    // Trades feed the mark prices and the candles as they are filled
+    private Market newMarket() {
+        Market created = new Market(RandomStream.childSeed(seed, "market"));
+        created.setPriceEngine(priceEngine);
+        created.addFillListener(priceEngine);
+        created.addFillListener(candles);
+        return created;
     }
 
     private void initializeMarket() {
         if (market == null) {
-            market = new Market();
+            market = newMarket();
             // Initialize stocks in the market
-            for (Map.Entry<String, Stock> entry : stocks.entrySet()) {
-                market.registerStock(entry.getKey(), entry.getValue().getCurrentPrice(), 0.1); // Default volatility of 0.1
+            for (Stock stock : stocks.values()) {
+                listInMarket(stock);
             }
         }
+        if (marketMaker == null) {
+            marketMaker = new MarketMaker(market, SIMULATED_TRADER);
+        }
+    }
+
+    /**
+     * Replaces the stock definitions, e.g. after a datapack reload, and applies them to the
+     * running service.
+     */
+    public static void setUniverse(StockUniverse stockUniverse) {
+        universe = stockUniverse;
+        if (INSTANCE != null) {
+            INSTANCE.applyDefinitions(stockUniverse);
+        }
     }
 
+    /**
+     * The service of the running server. It is only ever created by {@link #get(ServerLevel)},
+     * so that it is seeded from the world and loaded from its save.
+     */
     public static StockMarketService getInstance() {
         if (INSTANCE == null) {
-            INSTANCE = new StockMarketService();
+            throw new IllegalStateException("The stock market has not been started by a server");
         }
         return INSTANCE;
     }
 
+    /**
+     * The service of a server running in this game, or null, e.g. on a client connected to a
+     * dedicated server, where the market lives in another process.
+     */
+    public static StockMarketService getRunningInstance() {
+        return INSTANCE;
+    }
+
+    // Forgets the stopped server's service; the world it belongs to keeps it for saving
+    public static void unload() {
+        INSTANCE = null;
+    }
+
     public static StockMarketService get(ServerLevel level) {
         if (INSTANCE != null) {
             return INSTANCE;
         }
         DimensionDataStorage storage = level.getDataStorage();
-        INSTANCE = storage.computeIfAbsent(StockMarketService::load, StockMarketService::new, DATA_NAME);
+        INSTANCE = storage.computeIfAbsent(StockMarketService::load, () -> new StockMarketService(level.getSeed()), DATA_NAME);
         return INSTANCE;
     }
 
     public static StockMarketService load(CompoundTag tag) {
-        StockMarketService service = new StockMarketService();
+        // Saves from before seeded streams get a fresh seed
+        StockMarketService service = new StockMarketService(tag.contains("seed") ? tag.getLong("seed") : new Random().nextLong());
         
         // Load stocks
         ListTag stocksList = tag.getList("stocks", Tag.TAG_COMPOUND);
         for (int i = 0; i < stocksList.size(); i++) {
             CompoundTag stockTag = stocksList.getCompound(i);
-            Stock stock = new Stock(stockTag.getString("symbol"), stockTag.getString("name"), 0.0);
+            String symbol = stockTag.getString("symbol");
+            // Saves from before sectors keep the sector the stock is defined with, if any
+            String sector = stockTag.getString("sector");
+            if (!service.sectors.hasSector(sector)) {
+                Stock defined = service.stocks.get(symbol);
+                sector = defined != null ? defined.getSector() : SectorRegistry.MARKET;
+            }
+            Stock stock = new Stock(symbol, stockTag.getString("name"), sector, 0.0);
             stock.deserializeNBT(stockTag);
-            service.stocks.put(stock.getSymbol(), stock);
+            service.putStock(stock);
         }
         
         // Load portfolios
@@ -90,17 +183,37 @@ public class StockMarketService extends SavedData {
         
         // Load market history
         service.marketHistory.deserializeNBT(tag.getCompound("marketHistory"));
+        service.candles.deserializeNBT(tag.getCompound("candles"));
+        // Saves from before persisted marks keep the stock prices putStock started the models at
+        if (tag.contains("priceEngine")) {
+            service.priceEngine.deserializeNBT(tag.getCompound("priceEngine"));
+        }
         
         // Load other data
         service.lastUpdateTime = tag.getLong("lastUpdateTime");
+        CompoundTag randomTag = tag.getCompound("random");
+        if (randomTag.contains("events")) {
+            service.eventRandom.setState(randomTag.getLong("events"));
+        }
+        if (randomTag.contains("factors")) {
+            service.factorRandom.setState(randomTag.getLong("factors"));
+        }
+        CompoundTag stockRandomTag = randomTag.getCompound("stocks");
+        for (String symbol : stockRandomTag.getAllKeys()) {
+            service.stockRandom(symbol).setState(stockRandomTag.getLong(symbol));
+        }
 
         // Load market data
         if (tag.contains("market")) {
-            service.market = new Market();
+            service.market = service.newMarket();
             service.market.deserializeNBT(tag.getCompound("market"));
+            service.marketMaker = new MarketMaker(service.market, SIMULATED_TRADER);
+            service.marketMaker.deserializeNBT(tag.getCompound("marketMaker"));
         } else {
             service.initializeMarket();
         }
+        // Stocks defined since the save was written
+        service.applyDefinitions(universe);
         
         return service;
     }
@@ -123,65 +236,166 @@ public class StockMarketService extends SavedData {
         
         // Save market history
         tag.put("marketHistory", marketHistory.serializeNBT());
+        tag.put("candles", candles.serializeNBT());
+        tag.put("priceEngine", priceEngine.serializeNBT());
         
         // Save other data
         tag.putLong("lastUpdateTime", lastUpdateTime);
+        tag.putLong("seed", seed);
+        CompoundTag randomTag = new CompoundTag();
+        randomTag.putLong("events", eventRandom.getState());
+        randomTag.putLong("factors", factorRandom.getState());
+        CompoundTag stockRandomTag = new CompoundTag();
+        stockRandom.forEach((symbol, stream) -> stockRandomTag.putLong(symbol, stream.getState()));
+        randomTag.put("stocks", stockRandomTag);
+        tag.put("random", randomTag);
 
         // Save market data
-        if (market != null) {
+        if (engine != null) {
+            tag.put("market", engine.callLocked(market::serializeNBT));
+        } else if (market != null) {
             tag.put("market", market.serializeNBT());
         }
+        if (marketMaker != null) {
+            tag.put("marketMaker", marketMaker.serializeNBT());
+        }
         
         return tag;
     }
 
-    private void initializeStocks() {
-        // Mining stocks
-        addStock("DIAM", "Diamond Corp", 100.0);
-        addStock("GOLD", "Gold Inc", 150.0);
-        addStock("IRON", "Iron Works", 75.0);
-        addStock("EMER", "Emerald Ltd", 200.0);
-        addStock("COAL", "Coal Energy", 50.0);
-        
-        // Farming stocks
-        addStock("WHEAT", "Wheat Fields", 60.0);
-        addStock("CARROT", "Carrot Co", 45.0);
-        addStock("POTATO", "Potato Farms", 40.0);
-        addStock("SUGAR", "Sugar Cane", 55.0);
-        
-        // Technology stocks
-        addStock("REDST", "Redstone Tech", 120.0);
-        addStock("OBSID", "Obsidian Systems", 180.0);
-        addStock("ENCHT", "Enchantment Corp", 250.0);
-        
-        // Transportation stocks
-        addStock("RAIL", "Railway Co", 80.0);
-        addStock("BOAT", "Boat Works", 65.0);
-        addStock("HORSE", "Horse Power", 90.0);
+    /**
+     * Lists every defined stock that is not listed yet. Stocks that are already listed keep
+     * their price, book and sector and only take over the volatility; stocks no longer
+     * defined stay listed. Listing only fills in the symbol registries, the book and history
+     * of a stock are created once it is traded or looked at.
+     */
+    private void applyDefinitions(StockUniverse definitions) {
+        for (Map.Entry<String, String> sector : definitions.getSectors().entrySet()) {
+            if (!sectors.hasSector(sector.getKey())) {
+                sectors.defineSector(sector.getKey(), sector.getValue());
+            }
+        }
+        for (StockDefinition definition : definitions.getStocks()) {
+            Stock stock = stocks.get(definition.getSymbol());
+            if (stock == null) {
+                stock = new Stock(definition.getSymbol(), definition.getName(), definition.getSector(), definition.getBasePrice());
+                putStock(stock);
+            }
+            if (definition.hasVolatility()) {
+                priceModel.setVolatility(definition.getSymbol(), definition.getVolatility());
+            }
+            if (market != null) {
+                listInMarket(stock);
+            }
+        }
+        publishSnapshot(lastUpdateTime);
+    }
+
+    private void listInMarket(Stock stock) {
+        StockDefinition definition = universe.getStock(stock.getSymbol());
+        double tickSize = definition != null ? definition.getTickSize() : OrderBook.DEFAULT_TICK_SIZE;
+        market.listStock(stock.getSymbol(), stock.getCurrentPrice(), BOOK_VOLATILITY, tickSize);
     }
 
-    private void addStock(String symbol, String name, double initialPrice) {
-        stocks.put(symbol, new Stock(symbol, name, initialPrice));
+    // Copies every stock's quote into a new snapshot and publishes it
+    private void publishSnapshot(long gameTime) {
+        int count = stocksById.size();
+        String[] symbols = new String[count];
+        String[] names = new String[count];
+        double[] prices = new double[count];
+        double[] changes = new double[count];
+        long[] volumes = new long[count];
+        double[] bestBids = new double[count];
+        double[] bestAsks = new double[count];
+        Map<String, MatchingEngine.BookTop> bookTops = engine != null ? engine.getBookTops() : null;
+        for (int id = 0; id < count; id++) {
+            Stock stock = stocksById.get(id);
+            String symbol = stock.getSymbol();
+            symbols[id] = symbol;
+            names[id] = stock.getName();
+            prices[id] = stock.getCurrentPrice();
+            changes[id] = stock.getPriceChange();
+            volumes[id] = stock.getVolume();
+            if (bookTops != null) {
+                // The engine owns the books while running and publishes their tops itself
+                MatchingEngine.BookTop top = bookTops.get(symbol);
+                if (top != null) {
+                    bestBids[id] = top.getBestBid();
+                    bestAsks[id] = top.getBestAsk();
+                    priceEngine.onQuote(symbol, bestBids[id], bestAsks[id]);
+                }
+            } else if (market != null && market.hasOrderBook(symbol)) {
+                market.copyDepth(symbol, depthScratch);
+                bestBids[id] = depthScratch.getBidLevels() > 0 ? depthScratch.getBidPrice(0) : 0;
+                bestAsks[id] = depthScratch.getAskLevels() > 0 ? depthScratch.getAskPrice(0) : 0;
+                priceEngine.onQuote(symbol, bestBids[id], bestAsks[id]);
+            }
+        }
+        snapshot = new MarketSnapshot(snapshot.getSequence() + 1, gameTime, symbols, names, prices,
+            changes, volumes, bestBids, bestAsks);
+    }
+
+    private void putStock(Stock stock) {
+        stocks.put(stock.getSymbol(), stock);
+        priceEngine.setModelPrice(stock.getSymbol(), stock.getCurrentPrice());
+        int id = sectors.addStock(stock.getSymbol(), stock.getSector());
+        if (id == stocksById.size()) {
+            stocksById.add(stock);
+        } else {
+            stocksById.set(id, stock);
+        }
     }
 
     public void updateMarket(Level level) {
         if (!(level instanceof ServerLevel serverLevel)) return;
         
         long currentTime = level.getGameTime();
+        // Market time advances every tick so that orders expire on time
+        if (engine != null) {
+            engine.setGameTick(currentTime);
+        } else if (market != null) {
+            market.setGameTick(currentTime);
+        }
         if (currentTime - lastUpdateTime < UPDATE_INTERVAL) return;
         
         lastUpdateTime = currentTime;
+        priceEngine.advance(currentTime);
         
         // Check for market events
-        if (random.nextDouble() < EVENT_CHANCE) {
+        if (eventRandom.nextDouble() < EVENT_CHANCE) {
             triggerMarketEvent(serverLevel);
         }
         
-        // Update stock prices
-        for (Stock stock : stocks.values()) {
-            updateStockPrice(stock);
-            marketHistory.addPricePoint(stock.getSymbol(), stock.getCurrentPrice(), currentTime);
+        // Update stock prices; simulated orders are collected and uncrossed in one auction per stock
+        if (engine != null) {
+            engine.beginAuction();
+        } else if (market != null) {
+            market.beginAuction();
+        }
+        activatePending();
+        simulatePrices();
+        for (int id = 0; id < stocksById.size(); id++) {
+            updateModelPrice(stocksById.get(id), simulatedPrices[id]);
+        }
+        if (engine != null) {
+            engine.endAuction();
+        } else if (market != null) {
+            market.endAuction();
+        }
+        // Quote the marks only now, so that the auction's clearing trades weigh in; a running
+        // engine clears asynchronously, and its trades reach the next update instead
+        for (int id = 0; id < stocksById.size(); id++) {
+            Stock stock = stocksById.get(id);
+            stock.setCurrentPrice(priceEngine.getMarkPrice(stock.getSymbol()));
+            // Only stocks someone has looked at keep a history
+            if (marketHistory.isTracked(stock.getSymbol())) {
+                marketHistory.addPricePoint(stock.getSymbol(), stock.getCurrentPrice(), currentTime);
+                // Volume comes from the fills; a price update only moves the bar
+                candles.record(stock.getSymbol(), stock.getCurrentPrice(), 0, currentTime);
+            }
         }
+        publishSnapshot(currentTime);
+        setDirty();
         
         // Play market update sound
         serverLevel.playSound(null, BlockPos.ZERO, ModSounds.MARKET_UPDATE.get(), 
@@ -190,7 +404,7 @@ public class StockMarketService extends SavedData {
 
     private void triggerMarketEvent(ServerLevel level) {
         // Randomly select a market event
-        int eventType = random.nextInt(3);
+        int eventType = eventRandom.nextInt(3);
         switch (eventType) {
             case 0 -> triggerMarketCrash(level);
             case 1 -> triggerMarketBoom(level);
@@ -199,81 +413,185 @@ public class StockMarketService extends SavedData {
     }
 
     private void triggerMarketCrash(ServerLevel level) {
-        for (Stock stock : stocks.values()) {
-            double currentPrice = stock.getCurrentPrice();
-            double newPrice = currentPrice * (0.5 + random.nextDouble() * 0.3); // 50-80% of current price
-            stock.setCurrentPrice(newPrice);
+        for (int id : sectors.getMemberIds(SectorRegistry.MARKET)) {
+            Stock stock = stocksById.get(id);
+            shockPrice(stock, 0.5 + stockRandom(stock.getSymbol()).nextDouble() * 0.3); // 50-80% of current price
         }
         level.playSound(null, BlockPos.ZERO, ModSounds.TRADE_FAIL.get(), 
             SoundSource.MASTER, 1.0f, 0.8f);
     }
 
     private void triggerMarketBoom(ServerLevel level) {
-        for (Stock stock : stocks.values()) {
-            double currentPrice = stock.getCurrentPrice();
-            double newPrice = currentPrice * (1.2 + random.nextDouble() * 0.3); // 120-150% of current price
-            stock.setCurrentPrice(newPrice);
+        for (int id : sectors.getMemberIds(SectorRegistry.MARKET)) {
+            Stock stock = stocksById.get(id);
+            shockPrice(stock, 1.2 + stockRandom(stock.getSymbol()).nextDouble() * 0.3); // 120-150% of current price
         }
         level.playSound(null, BlockPos.ZERO, ModSounds.TRADE_SUCCESS.get(), 
             SoundSource.MASTER, 1.0f, 1.2f);
     }
 
     private void triggerSectorEvent(ServerLevel level) {
-        String[] sectors = {"mining", "farming", "tech", "transport"};
-        String affectedSector = sectors[random.nextInt(sectors.length)];
-        double multiplier = 0.5 + random.nextDouble(); // 50-150% change
+        List<String> topSectors = sectors.getChildren(SectorRegistry.MARKET);
+        // Without any sectors defined, the event hits the market as a whole
+        String affectedSector = topSectors.isEmpty()
+            ? SectorRegistry.MARKET : topSectors.get(eventRandom.nextInt(topSectors.size()));
+        double multiplier = 0.5 + eventRandom.nextDouble(); // 50-150% change
         
-        for (Stock stock : stocks.values()) {
-            String symbol = stock.getSymbol();
-            if ((affectedSector.equals("mining") && symbol.matches("DIAM|GOLD|IRON|EMER|COAL")) ||
-                (affectedSector.equals("farming") && symbol.matches("WHEAT|CARROT|POTATO|SUGAR")) ||
-                (affectedSector.equals("tech") && symbol.matches("REDST|OBSID|ENCHT")) ||
-                (affectedSector.equals("transport") && symbol.matches("RAIL|BOAT|HORSE"))) {
-                double currentPrice = stock.getCurrentPrice();
-                double newPrice = currentPrice * multiplier;
-                stock.setCurrentPrice(newPrice);
-            }
+        // Membership is precomputed, so this only visits the sector's own stocks
+        for (int id : sectors.getMemberIds(affectedSector)) {
+            shockPrice(stocksById.get(id), multiplier);
         }
         level.playSound(null, BlockPos.ZERO, ModSounds.MARKET_UPDATE.get(), 
             SoundSource.MASTER, 1.0f, 1.0f);
     }
 
-    private void updateStockPrice(Stock stock) {
-        double currentPrice = stock.getCurrentPrice();
-        double change = (random.nextDouble() - 0.5) * 10.0; // Random change between -5 and +5
-        double newPrice = Math.max(1.0, currentPrice + change); // Ensure price never goes below 1
+    // Events move the model price; trades and quotes still weigh in on the mark
+    private void shockPrice(Stock stock, double multiplier) {
+        String symbol = stock.getSymbol();
+        priceEngine.setModelPrice(symbol, priceEngine.getModelPrice(symbol) * multiplier);
+        stock.setCurrentPrice(priceEngine.getMarkPrice(symbol));
+    }
+
+    // Moves every stock's model price one step of the factor model, into simulatedPrices
+    private void simulatePrices() {
+        int count = stocksById.size();
+        if (simulatedPrices.length != count) {
+            simulatedPrices = new double[count];
+            simulatedStreams = new RandomStream[count];
+            for (int id = 0; id < count; id++) {
+                simulatedStreams[id] = stockRandom(stocksById.get(id).getSymbol());
+            }
+        }
+        for (int id = 0; id < count; id++) {
+            simulatedPrices[id] = priceEngine.getModelPrice(stocksById.get(id).getSymbol());
+        }
+        priceModel.step(simulatedPrices, factorRandom, simulatedStreams, count);
+    }
+
+    private void updateModelPrice(Stock stock, double simulatedPrice) {
+        double modelPrice = Math.max(1.0, simulatedPrice); // Ensure price never goes below 1
         
         // Simulate some volume
-        long volume = random.nextInt(1000) + 100;
+        long volume = stockRandom(stock.getSymbol()).nextInt(1000) + 100;
         stock.addVolume(volume);
         
-        // Update stock price
-        stock.setCurrentPrice(newPrice);
+        // The stock is quoted at the mark the new model price blends into, once the auction clears
+        priceEngine.setModelPrice(stock.getSymbol(), modelPrice);
         
-        // Add simulated orders to create market depth
-        if (market != null) {
-            // Add some buy orders
-            for (int i = 0; i < 5; i++) {
-                double buyPrice = newPrice * (0.95 + random.nextDouble() * 0.05); // 95-100% of current price
-                int buyQuantity = random.nextInt(100) + 10;
-                Order buyOrder = new Order(UUID.randomUUID(), UUID.randomUUID(), stock.getSymbol(), 
-                    Order.OrderType.BUY, buyPrice, buyQuantity);
-                market.addOrder(buyOrder);
-            }
-            
-            // Add some sell orders
-            for (int i = 0; i < 5; i++) {
-                double sellPrice = newPrice * (1.0 + random.nextDouble() * 0.05); // 100-105% of current price
-                int sellQuantity = random.nextInt(100) + 10;
-                Order sellOrder = new Order(UUID.randomUUID(), UUID.randomUUID(), stock.getSymbol(), 
-                    Order.OrderType.SELL, sellPrice, sellQuantity);
-                market.addOrder(sellOrder);
+        // Keep a fixed ladder of simulated quotes around the new mark, in books that are in use
+        if (marketMaker != null && market != null && market.hasOrderBook(stock.getSymbol())) {
+            marketMaker.requote(stock.getSymbol(), priceEngine.getMarkPrice(stock.getSymbol()));
+        }
+    }
+
+    // Gives stocks looked at or traded since the last update a book, quoted from now on, and a history
+    private void activatePending() {
+        for (String symbol : pendingActivations) {
+            pendingActivations.remove(symbol);
+            if (stocks.containsKey(symbol)) {
+                getMarket().openOrderBook(symbol);
+                marketHistory.track(symbol);
             }
         }
     }
 
+    private void activate(String symbol) {
+        if (!marketHistory.isTracked(symbol)) {
+            pendingActivations.add(symbol);
+        }
+    }
+
+    // Each stock draws from its own stream, so the order stocks are visited in does not matter
+    private RandomStream stockRandom(String symbol) {
+        return stockRandom.computeIfAbsent(symbol, s -> new RandomStream(seed).split("stock:" + s));
+    }
+
+    /**
+     * Places a player order, going through the matching engine when it is running.
+     *
+     * @return false if the engine's command queue was full and the order was not accepted
+     */
+    public boolean submitOrder(Order order) {
+        activate(order.getSymbol());
+        if (engine != null) {
+            return engine.placeOrder(order);
+        }
+        getMarket().placeOrder(order);
+        return true;
+    }
+
+    // Places a player's stop or take-profit order, going through the matching engine when it is running
+    public boolean submitTrigger(TriggerOrder trigger) {
+        activate(trigger.getOrder().getSymbol());
+        if (engine != null) {
+            return engine.placeTrigger(trigger);
+        }
+        getMarket().placeTrigger(trigger);
+        return true;
+    }
+
+    public void startMatchingEngine() {
+        if (engine == null) {
+            engine = new MatchingEngine(getMarket());
+            engine.start();
+            marketMaker.setEngine(engine);
+        }
+    }
+
+    public void stopMatchingEngine() {
+        if (engine != null) {
+            marketMaker.setEngine(null);
+            engine.stop();
+            engine = null;
+        }
+    }
+
+    public static StockUniverse getUniverse() {
+        return universe;
+    }
+
+    public MarketMaker getMarketMaker() {
+        return marketMaker;
+    }
+
+    public MatchingEngine getMatchingEngine() {
+        return engine;
+    }
+
+    public FactorModel getPriceModel() {
+        return priceModel;
+    }
+
+    public SectorRegistry getSectorRegistry() {
+        return sectors;
+    }
+
     public Stock getStock(String symbol) {
-        return stocks.get(symbol);
+        Stock stock = stocks.get(symbol);
+        if (stock != null) {
+            activate(symbol);
+        }
+        return stock;
+    }
+
+    /**
+     * The quotes of every stock as of the last market update. Cheap to call from any thread;
+     * prefer it over {@link #getAllStocks()}, which copies the live stocks.
+     */
+    public MarketSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * The live mark price of a stock, which follows fills between market updates. Every
+     * price a trade or valuation uses should come from here.
+     */
+    public double getMarkPrice(String symbol) {
+        return priceEngine.getMarkPrice(symbol);
+    }
+
+    public PriceEngine getPriceEngine() {
+        return priceEngine;
     }
 
     public Map<String, Stock> getAllStocks() {
@@ -287,13 +605,15 @@ public class StockMarketService extends SavedData {
     public boolean buyStock(Player player, String symbol, int quantity) {
         Stock stock = stocks.get(symbol);
         if (stock == null) return false;
+        activate(symbol);
         
         Portfolio portfolio = getPortfolio(player);
-        double totalCost = stock.getCurrentPrice() * quantity;
+        double totalCost = priceEngine.getMarkPrice(symbol) * quantity;
         
         if (portfolio.subtractBalance(totalCost)) {
             portfolio.addHolding(symbol, quantity);
             stock.addVolume(quantity);
+            setDirty();
             if (player instanceof ServerPlayer serverPlayer) {
                 serverPlayer.level().playSound(null, serverPlayer.getX(), serverPlayer.getY(), serverPlayer.getZ(),
                     ModSounds.TRADE_SUCCESS.get(), SoundSource.MASTER, 1.0f, 1.0f);
@@ -310,13 +630,15 @@ public class StockMarketService extends SavedData {
     public boolean sellStock(Player player, String symbol, int quantity) {
         Stock stock = stocks.get(symbol);
         if (stock == null) return false;
+        activate(symbol);
         
         Portfolio portfolio = getPortfolio(player);
         
         if (portfolio.removeHolding(symbol, quantity)) {
-            double totalValue = stock.getCurrentPrice() * quantity;
+            double totalValue = priceEngine.getMarkPrice(symbol) * quantity;
             portfolio.addBalance(totalValue);
             stock.addVolume(quantity);
+            setDirty();
             if (player instanceof ServerPlayer serverPlayer) {
                 serverPlayer.level().playSound(null, serverPlayer.getX(), serverPlayer.getY(), serverPlayer.getZ(),
                     ModSounds.TRADE_SUCCESS.get(), SoundSource.MASTER, 1.0f, 1.0f);
@@ -334,6 +656,7 @@ public class StockMarketService extends SavedData {
         Portfolio portfolio = getPortfolio(player);
         boolean success = portfolio.depositEmeralds(player, count);
         if (success) {
+            setDirty();
             if (player instanceof ServerPlayer serverPlayer) {
                 serverPlayer.level().playSound(null, serverPlayer.getX(), serverPlayer.getY(), serverPlayer.getZ(),
                     ModSounds.TRADE_SUCCESS.get(), SoundSource.MASTER, 1.0f, 1.0f);
@@ -352,6 +675,7 @@ public class StockMarketService extends SavedData {
         Portfolio portfolio = getPortfolio(player);
         boolean success = portfolio.withdrawEmeralds(player, count);
         if (success) {
+            setDirty();
             serverPlayer.level().playSound(null, serverPlayer.getX(), serverPlayer.getY(), serverPlayer.getZ(),
                 ModSounds.TRADE_SUCCESS.get(), SoundSource.MASTER, 1.0f, 1.0f);
         } else {
@@ -365,6 +689,10 @@ public class StockMarketService extends SavedData {
         return marketHistory;
     }
 
+    public CandleHistory getCandles() {
+        return candles;
+    }
+
     public void refreshStocks() {
         // Force an immediate market update by resetting the last update time
         lastUpdateTime = 0;
@@ -373,10 +701,10 @@ public class StockMarketService extends SavedData {
 
     public Market getMarket() {
         if (market == null) {
-            market = new Market();
+            market = newMarket();
             // Re-initialize stocks in case this is called after initialization
-            for (Map.Entry<String, Stock> entry : stocks.entrySet()) {
-                market.registerStock(entry.getKey(), entry.getValue().getCurrentPrice(), 0.1);
+            for (Stock stock : stocks.values()) {
+                listInMarket(stock);
             }
         }
         return market;
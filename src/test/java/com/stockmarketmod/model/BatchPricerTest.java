@@ -0,0 +1,77 @@
+package com.stockmarketmod.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+public class BatchPricerTest {
+
+    // The per-symbol formula Market.updatePrice has always used
+    private static double referencePrice(double basePrice, double volatility, long supply, long demand, int volume, double draw) {
+        double ratio = demand > 0 ? (double) supply / demand : 1.0;
+        double volumeImpact = Math.log1p(volume) / 100.0;
+        double priceAdjustment = (ratio - 1.0) * volatility;
+        double randomFactor = 1.0 + (draw - 0.5) * volatility;
+        return basePrice * (1.0 + priceAdjustment + volumeImpact) * randomFactor;
+    }
+
+    @Test
+    void testScalarMatchesReferenceFormula() {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            double basePrice = 1.0 + random.nextDouble() * 500.0;
+            double volatility = random.nextDouble() * 0.5;
+            long supply = random.nextInt(10_000);
+            long demand = random.nextInt(3) == 0 ? 0 : random.nextInt(10_000);
+            int volume = random.nextInt(100_000);
+            double draw = random.nextDouble();
+
+            double expected = referencePrice(basePrice, volatility, supply, demand, volume, draw);
+            double actual = BatchPricer.price(basePrice, volatility, BatchPricer.ratio(supply, demand),
+                BatchPricer.volumeImpact(volume), draw);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testBatchMatchesScalarBitForBit() {
+        // Long enough for the JIT to compile the batch loop while the test runs
+        int count = 5000;
+        int offset = 3;
+        Random random = new Random(11);
+        double[] basePrices = new double[offset + count];
+        double[] volatilities = new double[offset + count];
+        double[] ratios = new double[offset + count];
+        double[] impacts = new double[offset + count];
+        double[] draws = new double[offset + count];
+        for (int i = 0; i < basePrices.length; i++) {
+            basePrices[i] = 1.0 + random.nextDouble() * 500.0;
+            volatilities[i] = random.nextDouble() * 0.5;
+            ratios[i] = BatchPricer.ratio(random.nextInt(10_000), random.nextInt(10_000));
+            impacts[i] = BatchPricer.volumeImpact(random.nextInt(100_000));
+            draws[i] = random.nextDouble();
+        }
+
+        double[] expected = basePrices.clone();
+        for (int round = 0; round < 20; round++) {
+            for (int i = offset; i < basePrices.length; i++) {
+                expected[i] = BatchPricer.price(expected[i], volatilities[i], ratios[i], impacts[i], draws[i]);
+            }
+            BatchPricer.reprice(basePrices, volatilities, ratios, impacts, draws, offset, count);
+        }
+        assertArrayEquals(expected, basePrices);
+    }
+
+    @Test
+    void testBatchLeavesOtherEntriesAlone() {
+        double[] basePrices = {10.0, 20.0, 30.0, 40.0};
+        double[] ones = {1.0, 1.0, 1.0, 1.0};
+        double[] zeros = new double[4];
+        BatchPricer.reprice(basePrices, new double[] {0.1, 0.1, 0.1, 0.1}, ones, zeros, new double[] {1.0, 1.0, 1.0, 1.0}, 1, 2);
+        assertEquals(10.0, basePrices[0]);
+        assertEquals(20.0 * 1.05, basePrices[1], 1e-12);
+        assertEquals(30.0 * 1.05, basePrices[2], 1e-12);
+        assertEquals(40.0, basePrices[3]);
+    }
+}
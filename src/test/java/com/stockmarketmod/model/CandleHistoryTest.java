@@ -0,0 +1,101 @@
+package com.stockmarketmod.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.UUID;
+
+public class CandleHistoryTest {
+    private static final long MINUTE = CandleHistory.Resolution.MINUTE.getTicks();
+
+    @Test
+    void testBuildsBarsAtEveryResolution() {
+        CandleHistory candles = new CandleHistory();
+        candles.record("IRON", 10.0, 5, 0);
+        candles.record("IRON", 12.0, 3, 100);
+        candles.record("IRON", 9.0, 0, 200);
+        candles.record("IRON", 11.0, 2, MINUTE + 1);
+        // Late data for the first minute still lands in its bar
+        candles.record("IRON", 8.0, 1, 300);
+
+        CandleHistory.Candles out = new CandleHistory.Candles(10);
+        assertEquals(2, candles.copyLatest("IRON", CandleHistory.Resolution.MINUTE, out));
+        assertEquals(0L, out.getStart(0));
+        assertEquals(10.0, out.getOpen(0));
+        assertEquals(12.0, out.getHigh(0));
+        assertEquals(8.0, out.getLow(0));
+        assertEquals(9.0, out.getClose(0));
+        assertEquals(9L, out.getVolume(0));
+        assertEquals(MINUTE, out.getStart(1));
+
+        // Coarser resolutions fold everything into one bar
+        assertEquals(1, candles.copyLatest("IRON", CandleHistory.Resolution.HOUR, out));
+        assertEquals(11.0, out.getClose(0));
+        assertEquals(11L, out.getVolume(0));
+        assertEquals(0, candles.copyLatest("GOLD", CandleHistory.Resolution.HOUR, out));
+    }
+
+    @Test
+    void testRetentionBoundsEachResolution() {
+        CandleHistory candles = new CandleHistory();
+        candles.setRetention(CandleHistory.Resolution.MINUTE, 3);
+        for (int minute = 0; minute < 10; minute++) {
+            candles.record("COAL", 50.0 + minute, 1, minute * MINUTE);
+        }
+        CandleHistory.Candles out = new CandleHistory.Candles(2);
+        assertEquals(2, candles.copyRange("COAL", CandleHistory.Resolution.MINUTE, 0, Long.MAX_VALUE, out));
+        assertEquals(7 * MINUTE, out.getStart(0));
+        assertEquals(1, candles.copyRange("COAL", CandleHistory.Resolution.MINUTE, 9 * MINUTE, 10 * MINUTE, out));
+        assertEquals(59.0, out.getOpen(0));
+        assertEquals(1, candles.copyLatest("COAL", CandleHistory.Resolution.GAME_DAY, out));
+        assertEquals(10L, out.getVolume(0));
+
+        CandleHistory restored = new CandleHistory();
+        restored.setRetention(CandleHistory.Resolution.MINUTE, 3);
+        restored.deserializeNBT(candles.serializeNBT());
+        assertEquals(2, restored.copyLatest("COAL", CandleHistory.Resolution.MINUTE, out));
+        assertEquals(59.0, out.getHigh(1));
+        assertEquals(9 * MINUTE, out.getStart(1));
+    }
+
+    @Test
+    void testBarsGrowUpToTheirRetention() {
+        assertEquals(List.of(CandleHistory.Resolution.MINUTE, CandleHistory.Resolution.HOUR,
+            CandleHistory.Resolution.GAME_DAY), List.of(CandleHistory.Resolution.values()));
+
+        CandleHistory candles = new CandleHistory();
+        candles.setRetention(CandleHistory.Resolution.MINUTE, 100);
+        for (int minute = 0; minute < 250; minute++) {
+            candles.record("COAL", minute, 1, minute * MINUTE);
+        }
+        // Past the initial length and then around the full ring, the bars stay in order
+        CandleHistory.Candles out = new CandleHistory.Candles(200);
+        assertEquals(100, candles.copyLatest("COAL", CandleHistory.Resolution.MINUTE, out));
+        for (int i = 0; i < 100; i++) {
+            assertEquals((150 + i) * MINUTE, out.getStart(i));
+        }
+
+        candles.setRetention(CandleHistory.Resolution.MINUTE, 150);
+        candles.record("COAL", 250.0, 1, 250 * MINUTE);
+        assertEquals(101, candles.copyLatest("COAL", CandleHistory.Resolution.MINUTE, out));
+        assertEquals(150 * MINUTE, out.getStart(0));
+        assertEquals(250 * MINUTE, out.getStart(100));
+    }
+
+    @Test
+    void testFoldsFillsAsTheyArrive() {
+        Market market = new Market(1L);
+        market.registerStock("GOLD", 150.0, 0.0);
+        CandleHistory candles = new CandleHistory();
+        market.addFillListener(candles);
+        market.setGameTick(5L);
+
+        market.placeOrder(new Order(UUID.randomUUID(), "GOLD", Order.OrderType.SELL, 151.0, 4));
+        market.placeOrder(new Order(UUID.randomUUID(), "GOLD", Order.OrderType.BUY, 151.0, 4));
+        CandleHistory.Candles out = new CandleHistory.Candles(1);
+        assertEquals(1, candles.copyLatest("GOLD", CandleHistory.Resolution.MINUTE, out));
+        assertEquals(151.0, out.getClose(0));
+        assertEquals(4L, out.getVolume(0));
+    }
+}
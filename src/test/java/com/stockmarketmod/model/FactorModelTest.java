@@ -0,0 +1,124 @@
+package com.stockmarketmod.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+public class FactorModelTest {
+    private SectorRegistry sectors;
+
+    @BeforeEach
+    void setUp() {
+        sectors = new SectorRegistry();
+        sectors.defineSector("a", SectorRegistry.MARKET);
+        sectors.defineSector("b", SectorRegistry.MARKET);
+    }
+
+    private void addStocks(String sector, int count) {
+        for (int i = 0; i < count; i++) {
+            sectors.addStock(sector + i, sector);
+        }
+    }
+
+    private static RandomStream[] streams(long seed, int count) {
+        RandomStream[] streams = new RandomStream[count];
+        for (int i = 0; i < count; i++) {
+            streams[i] = new RandomStream(seed).split("stock:" + i);
+        }
+        return streams;
+    }
+
+    @Test
+    void testParallelStepsAreReproducible() {
+        // Enough stocks to be split across several fork-join tasks
+        addStocks("a", 700);
+        addStocks("b", 700);
+        int count = sectors.getStockCount();
+
+        double[][] runs = new double[2][];
+        for (int run = 0; run < 2; run++) {
+            FactorModel model = new FactorModel(sectors);
+            RandomStream factorRandom = new RandomStream(9L).split("factors");
+            RandomStream[] stockRandom = streams(9L, count);
+            double[] prices = new double[count];
+            Arrays.fill(prices, 100.0);
+            for (int step = 0; step < 5; step++) {
+                model.step(prices, factorRandom, stockRandom, count);
+            }
+            runs[run] = prices;
+        }
+        assertArrayEquals(runs[0], runs[1]);
+        assertNotEquals(runs[0][0], runs[0][1]);
+    }
+
+    @Test
+    void testReturnsAreCorrelatedThroughFactors() {
+        addStocks("a", 2);
+        addStocks("b", 2);
+        FactorModel model = new FactorModel(sectors);
+        model.configure(0.02, 0.0, 0.5, 0.4);
+        double[][] returns = simulate(model, 4000);
+
+        // Market and sector factor both contribute within a sector, only the market across
+        double sameSector = correlation(returns[0], returns[1]);
+        double crossSector = correlation(returns[0], returns[2]);
+        assertEquals(0.41, sameSector, 0.06);
+        assertEquals(0.25, crossSector, 0.06);
+        assertEquals(0.02, Math.sqrt(variance(returns[0])), 0.002);
+
+        // Correlating the sector factors pulls the sectors together
+        model.setFactorCorrelation("a", "b", 0.9);
+        returns = simulate(model, 4000);
+        assertEquals(0.394, correlation(returns[0], returns[2]), 0.06);
+    }
+
+    @Test
+    void testRejectsInconsistentCorrelations() {
+        addStocks("a", 1);
+        addStocks("b", 1);
+        FactorModel model = new FactorModel(sectors);
+        model.setFactorCorrelation("a", "b", 0.9);
+        model.setFactorCorrelation(SectorRegistry.MARKET, "a", 0.3);
+        assertThrows(IllegalArgumentException.class, () -> model.setFactorCorrelation(SectorRegistry.MARKET, "b", -0.9));
+
+        // The rejected setting is rolled back and the model keeps working
+        double[] prices = {10.0, 10.0};
+        model.step(prices, new RandomStream(1L), streams(1L, 2), 2);
+        assertTrue(prices[0] > 0 && prices[1] > 0);
+        assertThrows(IllegalArgumentException.class, () -> model.configure(0.02, 0.0, 0.8, 0.8));
+    }
+
+    private double[][] simulate(FactorModel model, int steps) {
+        int count = sectors.getStockCount();
+        RandomStream factorRandom = new RandomStream(3L).split("factors");
+        RandomStream[] stockRandom = streams(3L, count);
+        double[] prices = new double[count];
+        Arrays.fill(prices, 100.0);
+        double[][] returns = new double[count][steps];
+        for (int step = 0; step < steps; step++) {
+            double[] before = prices.clone();
+            model.step(prices, factorRandom, stockRandom, count);
+            for (int id = 0; id < count; id++) {
+                returns[id][step] = Math.log(prices[id] / before[id]);
+            }
+        }
+        return returns;
+    }
+
+    private static double variance(double[] values) {
+        double mean = Arrays.stream(values).average().orElse(0.0);
+        return Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum() / values.length;
+    }
+
+    private static double correlation(double[] first, double[] second) {
+        double meanFirst = Arrays.stream(first).average().orElse(0.0);
+        double meanSecond = Arrays.stream(second).average().orElse(0.0);
+        double covariance = 0.0;
+        for (int i = 0; i < first.length; i++) {
+            covariance += (first[i] - meanFirst) * (second[i] - meanSecond);
+        }
+        return covariance / first.length / Math.sqrt(variance(first) * variance(second));
+    }
+}
@@ -0,0 +1,94 @@
+package com.stockmarketmod.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+
+import java.util.Arrays;
+
+public class MarketHistoryTest {
+    @Test
+    void testRingKeepsTheNewestPoints() {
+        MarketHistory history = new MarketHistory(4);
+        for (int i = 1; i <= 6; i++) {
+            history.addPricePoint("IRON", i * 10.0, i * 100L);
+        }
+        MarketHistory.Series series = history.getSeries("IRON");
+        assertEquals(4, series.size());
+        assertEquals(30.0, series.getPrice(0));
+        assertEquals(600L, series.getTimestamp(3));
+        assertEquals(60.0, series.getLatestPrice());
+        assertEquals(55.0, history.getAveragePrice("IRON", 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> series.getPrice(4));
+
+        // The range wraps around the end of the ring
+        double[] prices = new double[10];
+        long[] timestamps = new long[10];
+        assertEquals(2, series.copyRange(350L, 600L, prices, timestamps));
+        assertArrayEquals(new double[] {40.0, 50.0}, Arrays.copyOf(prices, 2));
+        assertEquals(500L, timestamps[1]);
+        assertEquals(2, series.copyLatest(2, prices, null, 0));
+        assertEquals(60.0, prices[1]);
+
+        history.setCapacity(2);
+        assertEquals(2, series.size());
+        assertEquals(50.0, series.getPrice(0));
+        assertNull(history.getSeries("GOLD"));
+        assertEquals(0.0, history.getAveragePrice("GOLD", 5));
+    }
+
+    @Test
+    void testSeriesGrowsUpToItsCapacity() {
+        MarketHistory history = new MarketHistory(200);
+        for (int i = 0; i < 250; i++) {
+            history.addPricePoint("IRON", i, i);
+        }
+        MarketHistory.Series series = history.getSeries("IRON");
+        assertEquals(200, series.getCapacity());
+        assertEquals(200, series.size());
+        assertEquals(50.0, series.getPrice(0));
+        assertEquals(249.0, series.getLatestPrice());
+
+        double[] prices = new double[200];
+        assertEquals(200, series.copyLatest(200, prices, null, 0));
+        for (int i = 0; i < 200; i++) {
+            assertEquals(50.0 + i, prices[i]);
+        }
+
+        history.setCapacity(1000);
+        history.addPricePoint("IRON", 250.0, 250);
+        assertEquals(201, series.size());
+        assertEquals(50.0, series.getPrice(0));
+        assertEquals(250.0, series.getLatestPrice());
+    }
+
+    @Test
+    void testSavesPackedSeries() {
+        MarketHistory history = new MarketHistory(3);
+        history.track("GOLD");
+        for (int i = 0; i < 5; i++) {
+            history.addPricePoint("IRON", 75.0 + i, i);
+        }
+        MarketHistory restored = new MarketHistory(3);
+        restored.deserializeNBT(history.serializeNBT());
+        assertTrue(restored.isTracked("GOLD"));
+        assertEquals(0, restored.getSeries("GOLD").size());
+        assertEquals(3, restored.getSeries("IRON").size());
+        assertEquals(77.0, restored.getSeries("IRON").getPrice(0));
+        assertEquals(4L, restored.getSeries("IRON").getTimestamp(2));
+
+        // Older saves keep a list of point compounds
+        CompoundTag point = new CompoundTag();
+        point.putDouble("price", 12.5);
+        point.putLong("timestamp", 40L);
+        ListTag points = new ListTag();
+        points.add(point);
+        CompoundTag old = new CompoundTag();
+        old.put("COAL", points);
+        restored.deserializeNBT(old);
+        assertEquals(12.5, restored.getSeries("COAL").getLatestPrice());
+        assertFalse(restored.isTracked("IRON"));
+    }
+}
@@ -0,0 +1,23 @@
+package com.stockmarketmod.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketSnapshotTest {
+    @Test
+    void testLooksUpQuotesBySymbol() {
+        MarketSnapshot snapshot = new MarketSnapshot(7L, 1200L, new String[] {"IRON", "GOLD"},
+            new String[] {"Iron Works", "Gold Inc"}, new double[] {75.5, 150.0}, new double[] {0.5, -2.0},
+            new long[] {300L, 0L}, new double[] {75.0, 0.0}, new double[] {76.0, 0.0});
+
+        assertEquals(2, snapshot.size());
+        assertEquals(7L, snapshot.getSequence());
+        int gold = snapshot.indexOf("GOLD");
+        assertEquals(1, gold);
+        assertEquals("Gold Inc", snapshot.getName(gold));
+        assertEquals(-2.0, snapshot.getChange(gold));
+        assertEquals(76.0, snapshot.getBestAsk(snapshot.indexOf("IRON")));
+        assertEquals(-1, snapshot.indexOf("COAL"));
+        assertEquals(0, MarketSnapshot.EMPTY.size());
+    }
+}
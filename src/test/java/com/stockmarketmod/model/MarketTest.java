@@ -4,6 +4,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.UUID;
 import java.util.List;
 
@@ -11,6 +12,7 @@ public class MarketTest {
     private Market market;
     private String testSymbol = "TEST";
     private UUID testPlayerId = UUID.randomUUID();
+    private UUID sellerId = UUID.randomUUID(); // Buys and sells of one account never trade with each other
 
     @BeforeEach
     void setUp() {
@@ -41,6 +43,38 @@ public class MarketTest {
         assertEquals(45, market.getTotalSupply(testSymbol));
     }
 
+    @Test
+    void testSupplyAndDemandFollowFillsCancelsAndExpiry() {
+        market.setGameTick(100);
+        Order bid = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 100.0, 30);
+        Order expiring = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 90.0, 5);
+        expiring.setExpiryTick(110);
+        Order ask = new Order(sellerId, testSymbol, Order.OrderType.SELL, 120.0, 40);
+        market.placeOrder(bid);
+        market.placeOrder(expiring);
+        market.placeOrder(ask);
+        assertEquals(35, market.getTotalDemand(testSymbol));
+        assertEquals(40, market.getTotalSupply(testSymbol));
+
+        // A crossing sell fills part of the bid and never rests
+        market.placeOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 100.0, 12));
+        assertEquals(23, market.getTotalDemand(testSymbol));
+        assertEquals(40, market.getTotalSupply(testSymbol));
+
+        market.amendOrder(ask.getOrderId(), 120.0, 25);
+        assertEquals(25, market.getTotalSupply(testSymbol));
+        market.cancelOrder(ask.getOrderId());
+        assertEquals(0, market.getTotalSupply(testSymbol));
+
+        market.setGameTick(110);
+        assertEquals(18, market.getTotalDemand(testSymbol));
+
+        Market restored = new Market();
+        restored.deserializeNBT(market.serializeNBT());
+        assertEquals(18, restored.getTotalDemand(testSymbol));
+        assertEquals(0, restored.getTotalSupply(testSymbol));
+    }
+
     @Test
     void testMarketDepth() {
         // Create orders at different price levels
@@ -94,4 +128,475 @@ public class MarketTest {
         // Verify price has changed
         assertNotEquals(initialPrice, newPrice);
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testCurrentPriceIsTheMarkOnceAnEngineIsAttached() {
+        PriceEngine prices = new PriceEngine();
+        market.setPriceEngine(prices);
+        market.addFillListener(prices);
+        assertEquals(100.0, market.getCurrentPrice(testSymbol));
+
+        prices.setModelPrice(testSymbol, 104.0);
+        assertEquals(104.0, market.getCurrentPrice(testSymbol));
+
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 110.0, 10));
+        market.placeOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 110.0, 10));
+        assertEquals(prices.getMarkPrice(testSymbol), market.getCurrentPrice(testSymbol));
+        assertEquals(0.4 / 0.7 * 110.0 + 0.3 / 0.7 * 104.0, market.getCurrentPrice(testSymbol), 1e-9);
+    }
+
+    @Test
+    void testUpdatePricesSweepsEverySymbol() {
+        // Enough symbols to span several pages of the symbol table; no volatility, so only volume moves prices
+        Market large = new Market();
+        for (int i = 0; i < 600; i++) {
+            large.registerStock("S" + i, i + 1.0, 0.0);
+        }
+        large.addOrder(new Order(testPlayerId, "S300", Order.OrderType.BUY, 250.0, 10));
+        // Orders only reach the model price through the next sweep
+        assertEquals(301.0, large.getCurrentPrice("S300"));
+
+        large.updatePrices();
+        double impact = 1.0 + Math.log1p(10) / 100.0;
+        assertEquals(301.0 * impact, large.getCurrentPrice("S300"), 1e-9);
+        assertEquals(1.0, large.getCurrentPrice("S0"));
+        assertEquals(600.0, large.getCurrentPrice("S599"));
+
+        // Registering a symbol again keeps its place and resets its price
+        large.registerStock("S5", 10.0, 0.0);
+        assertEquals(600, large.getSymbols().size());
+        assertEquals(10.0, large.getCurrentPrice("S5"));
+
+        Market restored = new Market();
+        restored.deserializeNBT(large.serializeNBT());
+        assertEquals(600, restored.getSymbols().size());
+        assertEquals(large.getCurrentPrice("S300"), restored.getCurrentPrice("S300"));
+        assertEquals(large.getCurrentPrice("S599"), restored.getCurrentPrice("S599"));
+        assertEquals(10, restored.getTotalDemand("S300"));
+    }
+
+    @Test
+    void testOrderBooksAreCreatedOnFirstUse() {
+        Market lazy = new Market(5L);
+        lazy.listStock("IDLE", 40.0, 0.1, 0.05);
+        lazy.listStock("BUSY", 20.0, 0.1, OrderBook.DEFAULT_TICK_SIZE);
+
+        // Listed stocks are priced and repriced without a book
+        assertTrue(lazy.isListed("IDLE"));
+        assertFalse(lazy.hasOrderBook("IDLE"));
+        assertEquals(40.0, lazy.getCurrentPrice("IDLE"));
+        assertEquals(0, lazy.getTotalSupply("IDLE"));
+        lazy.updatePrices();
+        lazy.updatePrice("IDLE");
+        assertNotEquals(40.0, lazy.getCurrentPrice("IDLE"));
+        assertFalse(lazy.hasOrderBook("IDLE"));
+
+        // Trading or viewing the depth creates the book
+        lazy.addOrder(new Order(testPlayerId, "BUSY", Order.OrderType.BUY, 19.0, 5));
+        assertTrue(lazy.hasOrderBook("BUSY"));
+        lazy.getMarketDepth("IDLE", 5);
+        assertTrue(lazy.hasOrderBook("IDLE"));
+        assertEquals(0.05, lazy.getOrderBooks().get("IDLE").getTickSize());
+        assertThrows(IllegalArgumentException.class, () -> lazy.getCurrentPrice("NONE"));
+
+        // Listing again only updates the volatility and keeps the book and price
+        double price = lazy.getCurrentPrice("BUSY");
+        lazy.listStock("BUSY", 99.0, 0.2, OrderBook.DEFAULT_TICK_SIZE);
+        assertEquals(price, lazy.getCurrentPrice("BUSY"));
+        assertEquals(5, lazy.getTotalDemand("BUSY"));
+
+        // Saves keep listed stocks without a book unbooked
+        lazy.listStock("LATER", 7.0, 0.1, 0.25);
+        Market restored = new Market();
+        restored.deserializeNBT(lazy.serializeNBT());
+        assertFalse(restored.hasOrderBook("LATER"));
+        assertEquals(7.0, restored.getCurrentPrice("LATER"));
+        restored.getMarketDepth("LATER", 1);
+        assertEquals(0.25, restored.getOrderBooks().get("LATER").getTickSize());
+        assertEquals(5, restored.getTotalDemand("BUSY"));
+    }
+
+    @Test
+    void testSeededPricePathsReplayInAnyOrder() {
+        String[] names = {"A", "B", "C", "D"};
+        Market batched = new Market(42L);
+        Market serial = new Market(42L);
+        for (String name : names) {
+            batched.registerStock(name, 100.0, 0.2);
+            serial.registerStock(name, 100.0, 0.2);
+        }
+
+        // One batch sweep must match repricing the symbols one by one, in reverse
+        batched.updatePrices();
+        for (int i = names.length - 1; i >= 0; i--) {
+            serial.updatePrice(names[i]);
+        }
+        for (String name : names) {
+            assertEquals(batched.getCurrentPrice(name), serial.getCurrentPrice(name));
+        }
+        assertNotEquals(batched.getCurrentPrice("A"), batched.getCurrentPrice("B"));
+
+        // The streams carry on from where they were saved
+        Market restored = new Market();
+        restored.deserializeNBT(batched.serializeNBT());
+        assertEquals(42L, restored.getSeed());
+        batched.updatePrices();
+        restored.updatePrices();
+        for (String name : names) {
+            assertEquals(batched.getCurrentPrice(name), restored.getCurrentPrice(name));
+        }
+    }
+
+    @Test
+    void testCancelOrder() {
+        Order buyOrder = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 100.0, 10);
+        market.placeOrder(buyOrder);
+
+        assertSame(buyOrder, market.getOrder(buyOrder.getOrderId()));
+        assertTrue(market.cancelOrder(buyOrder.getOrderId()));
+        assertFalse(market.cancelOrder(buyOrder.getOrderId()));
+        assertNull(market.getOrder(buyOrder.getOrderId()));
+        assertTrue(market.getOrderBooks().get(testSymbol).getBuyOrders().isEmpty());
+    }
+
+    @Test
+    void testAmendOrder() {
+        Order first = new Order(sellerId, testSymbol, Order.OrderType.SELL, 110.0, 20);
+        Order second = new Order(sellerId, testSymbol, Order.OrderType.SELL, 110.0, 20);
+        market.placeOrder(first);
+        market.placeOrder(second);
+
+        // Reducing quantity keeps the order at the front of the queue
+        assertTrue(market.amendOrder(first.getOrderId(), 110.0, 5));
+        List<Order> sells = market.getOrderBooks().get(testSymbol).getSellOrders();
+        assertSame(first, sells.get(0));
+        assertEquals(5, first.getQuantity());
+
+        // Increasing quantity sends it to the back
+        assertTrue(market.amendOrder(first.getOrderId(), 110.0, 30));
+        sells = market.getOrderBooks().get(testSymbol).getSellOrders();
+        assertSame(second, sells.get(0));
+        assertSame(first, sells.get(1));
+
+        // Repricing through the bid trades against it
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 100.0, 10));
+        assertTrue(market.amendOrder(first.getOrderId(), 100.0, 30));
+        assertEquals(20, first.getQuantity());
+        assertTrue(market.getOrderBooks().get(testSymbol).getBuyOrders().isEmpty());
+    }
+
+    @Test
+    void testMarketDepthAggregatesLevels() {
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 100.0, 10));
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 100.0, 5));
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 99.0, 7));
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 98.0, 3));
+        market.placeOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 101.0, 20));
+
+        // A partial fill is reflected in the level total without rescanning
+        market.placeOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 100.0, 4));
+
+        Market.MarketDepth depth = market.getMarketDepth(testSymbol, 2);
+        List<Market.PriceLevel> buyLevels = depth.getBuyLevels();
+        assertEquals(2, buyLevels.size());
+        assertEquals(100.0, buyLevels.get(0).getPrice());
+        assertEquals(11, buyLevels.get(0).getQuantity());
+        assertEquals(2, buyLevels.get(0).getOrderCount());
+        assertEquals(99.0, buyLevels.get(1).getPrice());
+
+        // Ask levels come from their own side of the ladder, so their order never depends on the bids
+        List<Market.PriceLevel> sellLevels = depth.getSellLevels();
+        assertEquals(1, sellLevels.size());
+        assertEquals(101.0, sellLevels.get(0).getPrice());
+        assertEquals(20, sellLevels.get(0).getQuantity());
+    }
+
+    @Test
+    void testCopyDepthIntoSnapshot() {
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 100.0, 10));
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 99.0, 5));
+        market.placeOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 101.0, 20));
+
+        Market.DepthSnapshot snapshot = new Market.DepthSnapshot(1);
+        long version = market.copyDepth(testSymbol, snapshot);
+        assertEquals(1, snapshot.getBidLevels());
+        assertEquals(100.0, snapshot.getBidPrice(0));
+        assertEquals(10, snapshot.getBidQuantity(0));
+        assertEquals(1, snapshot.getAskLevels());
+        assertEquals(101.0, snapshot.getAskPrice(0));
+
+        // An unchanged book reports the same version
+        assertEquals(version, market.copyDepth(testSymbol, snapshot));
+
+        market.placeOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 100.0, 4));
+        assertTrue(market.copyDepth(testSymbol, snapshot) > version);
+        assertEquals(6, snapshot.getBidQuantity(0));
+        assertEquals(100.0, snapshot.getLastTradePrice());
+    }
+
+    @Test
+    void testFillsArePublishedPerMatchingCall() {
+        List<long[]> batches = new ArrayList<>();
+        market.addFillListener((fills, from, to) -> batches.add(new long[] {from, to}));
+        market.setGameTick(42);
+
+        Order maker1 = new Order(sellerId, testSymbol, Order.OrderType.SELL, 101.0, 10);
+        Order maker2 = new Order(sellerId, testSymbol, Order.OrderType.SELL, 102.0, 10);
+        market.placeOrder(maker1);
+        market.placeOrder(maker2);
+        assertTrue(batches.isEmpty());
+
+        Order taker = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 102.0, 15);
+        market.placeOrder(taker);
+
+        // One sweep produces one batch holding both fills
+        assertEquals(1, batches.size());
+        assertEquals(0, batches.get(0)[0]);
+        assertEquals(2, batches.get(0)[1]);
+
+        FillRing fills = market.getFills();
+        assertEquals(maker1.getOrderId(), fills.getMakerOrderId(0));
+        assertEquals(taker.getOrderId(), fills.getTakerOrderId(0));
+        assertEquals(10, fills.getQuantity(0));
+        assertTrue(fills.isTakerBuy(0));
+        assertEquals(maker2.getOrderId(), fills.getMakerOrderId(1));
+        assertEquals(5, fills.getQuantity(1));
+        assertEquals(102.0, fills.getPrice(1));
+        assertEquals(42, fills.getGameTick(1));
+        assertEquals(testSymbol, fills.getSymbol(1));
+    }
+
+    @Test
+    void testFillListenersRunOutsideTheBookLock() {
+        List<Boolean> locked = new ArrayList<>();
+        market.addFillListener((fills, from, to) ->
+            locked.add(market.getOrderBooks().get(testSymbol).lock.isWriteLocked()));
+
+        market.placeOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 101.0, 10));
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 101.0, 4));
+        Order bid = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 99.0, 4);
+        market.placeOrder(bid);
+        market.amendOrder(bid.getOrderId(), 101.0, 4);
+
+        assertEquals(List.of(false, false), locked);
+    }
+
+    @Test
+    void testOrdersGetSequentialIdsAndAccounts() {
+        UUID otherPlayerId = UUID.randomUUID();
+        Order first = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 90.0, 10);
+        Order second = new Order(otherPlayerId, testSymbol, Order.OrderType.BUY, 91.0, 10);
+        Order third = new Order(testPlayerId, testSymbol, Order.OrderType.SELL, 120.0, 10);
+        assertEquals(Order.NO_ID, first.getOrderId());
+        market.placeOrder(first);
+        market.placeOrder(second);
+        market.placeOrder(third);
+
+        assertTrue(first.getOrderId() < second.getOrderId());
+        assertTrue(second.getOrderId() < third.getOrderId());
+        assertEquals(first.getAccountId(), third.getAccountId());
+        assertNotEquals(first.getAccountId(), second.getAccountId());
+        assertEquals(otherPlayerId, market.getPlayerId(second.getAccountId()));
+
+        // Ids, accounts and the id sequence all survive a save
+        Market restored = new Market();
+        restored.deserializeNBT(market.serializeNBT());
+        Order restoredSecond = restored.getOrder(second.getOrderId());
+        assertEquals(otherPlayerId, restoredSecond.getPlayerId());
+        assertEquals(second.getAccountId(), restoredSecond.getAccountId());
+
+        Order next = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 80.0, 1);
+        restored.placeOrder(next);
+        assertTrue(next.getOrderId() > third.getOrderId());
+        assertEquals(first.getAccountId(), next.getAccountId());
+    }
+
+    @Test
+    void testOrdersExpireThroughCancel() {
+        market.setGameTick(1000);
+        Order shortLived = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 95.0, 10);
+        shortLived.setExpiryTick(1010);
+        Order longLived = new Order(sellerId, testSymbol, Order.OrderType.SELL, 120.0, 10);
+        longLived.setExpiryTick(5000);
+        market.placeOrder(shortLived);
+        market.placeOrder(longLived);
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 90.0, 10));
+
+        for (long tick = 1001; tick < 1010; tick++) {
+            market.setGameTick(tick);
+        }
+        assertSame(shortLived, market.getOrder(shortLived.getOrderId()));
+
+        market.setGameTick(1010);
+        assertNull(market.getOrder(shortLived.getOrderId()));
+        assertEquals(1, market.getOrderBooks().get(testSymbol).getBuyOrders().size());
+
+        // Expiries are restored from the saved orders
+        Market restored = new Market();
+        restored.deserializeNBT(market.serializeNBT());
+        restored.setGameTick(4999);
+        assertNotNull(restored.getOrder(longLived.getOrderId()));
+        restored.setGameTick(5000);
+        assertNull(restored.getOrder(longLived.getOrderId()));
+    }
+
+    @Test
+    void testTriggersExpireLikeRestingOrders() {
+        market.setGameTick(1000);
+        TriggerOrder stop = new TriggerOrder(testPlayerId, testSymbol, Order.OrderType.SELL,
+            TriggerOrder.TriggerType.STOP_LOSS, 90.0, 0.0, 10);
+        stop.getOrder().setExpiryTick(1010);
+        TriggerOrder laterStop = new TriggerOrder(testPlayerId, testSymbol, Order.OrderType.SELL,
+            TriggerOrder.TriggerType.STOP_LOSS, 85.0, 0.0, 10);
+        laterStop.getOrder().setExpiryTick(5000);
+        market.placeTrigger(stop);
+        market.placeTrigger(laterStop);
+        OrderBook book = market.getOrderBooks().get(testSymbol);
+        assertEquals(2, book.getPendingTriggerCount());
+
+        market.setGameTick(1009);
+        assertEquals(2, book.getPendingTriggerCount());
+        assertEquals(1, market.setGameTick(1010));
+        assertNull(market.getOrder(stop.getOrder().getOrderId()));
+        assertEquals(1, book.getPendingTriggerCount());
+
+        // The wheel is rebuilt with the trigger's expiry after a reload
+        Market restored = new Market();
+        restored.deserializeNBT(market.serializeNBT());
+        OrderBook restoredBook = restored.getOrderBooks().get(testSymbol);
+        restored.setGameTick(4999);
+        assertEquals(1, restoredBook.getPendingTriggerCount());
+        restored.setGameTick(5000);
+        assertEquals(0, restoredBook.getPendingTriggerCount());
+        assertNull(restored.getOrder(laterStop.getOrder().getOrderId()));
+    }
+
+    @Test
+    void testExpiringOrdersCanBePlacedWhileTicking() throws InterruptedException {
+        Thread placer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                Order order = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 90.0, 1);
+                order.setExpiryTick(i + 1);
+                market.placeOrder(order);
+            }
+        });
+        Thread ticker = new Thread(() -> {
+            for (long tick = 1; tick <= 20_000; tick++) {
+                market.setGameTick(tick);
+            }
+        });
+        placer.setDaemon(true);
+        ticker.setDaemon(true);
+        placer.start();
+        ticker.start();
+        placer.join(30_000);
+        ticker.join(30_000);
+        // Placing locks a book and then the wheel, ticking must never hold them the other way around
+        assertFalse(placer.isAlive());
+        assertFalse(ticker.isAlive());
+    }
+
+    @Test
+    void testAmendmentsWaitForTheAuction() {
+        market.placeOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 100.0, 10));
+        Order ask = new Order(sellerId, testSymbol, Order.OrderType.SELL, 105.0, 10);
+        market.placeOrder(ask);
+
+        market.beginAuction();
+        assertTrue(market.amendOrder(ask.getOrderId(), 99.0, 10));
+        OrderBook book = market.getOrderBooks().get(testSymbol);
+        assertEquals(0.0, book.getLastTradePrice());
+        assertEquals(99.0, book.getSellOrders().get(0).getPrice());
+
+        assertEquals(10, market.endAuction());
+        assertTrue(book.getSellOrders().isEmpty());
+    }
+
+    @Test
+    void testCallAuctionClearsAtSinglePrice() {
+        market.beginAuction();
+        market.addOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 102.0, 10));
+        market.addOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 101.0, 10));
+        market.addOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 99.0, 10));
+        market.addOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 100.0, 5));
+        market.addOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 101.0, 10));
+        market.addOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 103.0, 10));
+
+        // Nothing trades while orders are being collected
+        OrderBook book = market.getOrderBooks().get(testSymbol);
+        assertEquals(0.0, book.getLastTradePrice());
+
+        // At 101 there are 20 bid and 15 offered, more than at any other price
+        assertEquals(15, market.endAuction());
+        assertFalse(market.isInAuction());
+        assertEquals(101.0, book.getLastTradePrice());
+
+        FillRing fills = market.getFills();
+        for (long seq = 0; seq < fills.getNextSequence(); seq++) {
+            assertEquals(101.0, fills.getPrice(seq));
+        }
+        assertEquals(5, book.getBuyOrders().get(0).getQuantity());
+        assertEquals(103.0, book.getSellOrders().get(0).getPrice());
+    }
+
+    @Test
+    void testCallAuctionRepricesOnceItClears() {
+        market.beginAuction();
+        market.addOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 95.0, 30));
+        market.addOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 105.0, 10));
+        assertEquals(100.0, market.getCurrentPrice(testSymbol));
+
+        // Nothing crosses, but the stock is repriced from its book as the auction ends
+        assertEquals(0, market.endAuction());
+        assertNotEquals(100.0, market.getCurrentPrice(testSymbol));
+    }
+
+    @Test
+    void testCallAuctionNeverTradesAnAccountWithItself() {
+        market.beginAuction();
+        Order ownAsk = new Order(testPlayerId, testSymbol, Order.OrderType.SELL, 99.0, 10);
+        market.addOrder(ownAsk);
+        market.addOrder(new Order(testPlayerId, testSymbol, Order.OrderType.BUY, 101.0, 10));
+        market.addOrder(new Order(sellerId, testSymbol, Order.OrderType.SELL, 100.0, 4));
+
+        // The player's older ask makes way; only the other seller's shares change hands
+        assertEquals(4, market.endAuction());
+        assertNull(market.getOrder(ownAsk.getOrderId()));
+        FillRing fills = market.getFills();
+        for (long seq = 0; seq < fills.getNextSequence(); seq++) {
+            assertNotEquals(fills.getMakerAccount(seq), fills.getTakerAccount(seq));
+        }
+        OrderBook book = market.getOrderBooks().get(testSymbol);
+        assertTrue(book.getSellOrders().isEmpty());
+        assertEquals(6, book.getBuyOrders().get(0).getQuantity());
+    }
+
+    @Test
+    void testSymbolsTradeConcurrently() throws InterruptedException {
+        market.registerStock("OTHER", 50.0, 0.1);
+        int ordersPerThread = 2000;
+        Thread[] threads = new Thread[2];
+        String[] symbols = {testSymbol, "OTHER"};
+        for (int t = 0; t < threads.length; t++) {
+            String symbol = symbols[t];
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < ordersPerThread; i++) {
+                    Order.OrderType type = i % 2 == 0 ? Order.OrderType.BUY : Order.OrderType.SELL;
+                    market.placeOrder(new Order(type == Order.OrderType.BUY ? testPlayerId : sellerId, symbol, type, 100.0, 1));
+                    market.getCurrentPrice(symbols[0]);
+                    market.getMarketDepth(symbols[1], 5);
+                }
+            });
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        // Every sell crossed the buy before it, and no fill was lost between the two books
+        for (String symbol : symbols) {
+            assertEquals(0, market.getTotalDemand(symbol));
+            assertEquals(0, market.getTotalSupply(symbol));
+            assertEquals(ordersPerThread / 2, market.getOrderBooks().get(symbol).getVolume());
+        }
+        assertEquals(ordersPerThread, market.getFills().getNextSequence());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,277 @@
+package com.stockmarketmod.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.UUID;
+
+public class OrderBookTest {
+    private OrderBook orderBook;
+    private String testSymbol = "TEST";
+    private UUID testPlayerId = UUID.randomUUID();
+    private UUID sellerId = UUID.randomUUID(); // Buys and sells of one account never trade with each other
+
+    @BeforeEach
+    void setUp() {
+        orderBook = new OrderBook(testSymbol);
+    }
+
+    private Order order(Order.OrderType type, double price, int quantity) {
+        return new Order(type == Order.OrderType.SELL ? sellerId : testPlayerId, testSymbol, type, price, quantity);
+    }
+
+    @Test
+    void testOrdersAreReturnedInPricePriority() {
+        orderBook.addOrder(order(Order.OrderType.BUY, 99.0, 10));
+        orderBook.addOrder(order(Order.OrderType.BUY, 100.0, 10));
+        orderBook.addOrder(order(Order.OrderType.BUY, 12.5, 10));   // Far below the window
+        orderBook.addOrder(order(Order.OrderType.SELL, 101.0, 10));
+        orderBook.addOrder(order(Order.OrderType.SELL, 400.0, 10)); // Far above the window
+        orderBook.addOrder(order(Order.OrderType.SELL, 100.5, 10));
+
+        List<Order> buys = orderBook.getBuyOrders();
+        assertEquals(3, buys.size());
+        assertEquals(100.0, buys.get(0).getPrice());
+        assertEquals(99.0, buys.get(1).getPrice());
+        assertEquals(12.5, buys.get(2).getPrice());
+
+        List<Order> sells = orderBook.getSellOrders();
+        assertEquals(3, sells.size());
+        assertEquals(100.5, sells.get(0).getPrice());
+        assertEquals(101.0, sells.get(1).getPrice());
+        assertEquals(400.0, sells.get(2).getPrice());
+    }
+
+    @Test
+    void testBestPriceFollowsMarketAcrossWindow() {
+        // Walk the bid up by far more than the ladder window; every level must stay reachable
+        for (int i = 0; i < 50; i++) {
+            orderBook.addOrder(order(Order.OrderType.BUY, 10.0 + i * 5.0, 1));
+        }
+
+        List<Order> buys = orderBook.getBuyOrders();
+        assertEquals(50, buys.size());
+        for (int i = 1; i < buys.size(); i++) {
+            assertTrue(buys.get(i - 1).getPrice() > buys.get(i).getPrice());
+        }
+
+        // Sweeping the whole bid side has to find the levels parked outside the window
+        orderBook.addOrder(order(Order.OrderType.SELL, 1.0, 50));
+        assertTrue(orderBook.getBuyOrders().isEmpty());
+        assertTrue(orderBook.getSellOrders().isEmpty());
+        assertEquals(50, orderBook.getVolume());
+    }
+
+    @Test
+    void testCrossingOrdersMatch() {
+        orderBook.addOrder(order(Order.OrderType.SELL, 101.0, 10));
+        orderBook.addOrder(order(Order.OrderType.SELL, 102.0, 10));
+        orderBook.addOrder(order(Order.OrderType.BUY, 102.0, 15));
+
+        assertEquals(102.0, orderBook.getLastTradePrice());
+        assertEquals(15, orderBook.getVolume());
+        assertTrue(orderBook.getBuyOrders().isEmpty());
+
+        List<Order> sells = orderBook.getSellOrders();
+        assertEquals(1, sells.size());
+        assertEquals(102.0, sells.get(0).getPrice());
+        assertEquals(5, sells.get(0).getQuantity());
+    }
+
+    @Test
+    void testPartialFillKeepsTimePriority() {
+        Order first = order(Order.OrderType.SELL, 101.0, 10);
+        Order second = order(Order.OrderType.SELL, 101.0, 10);
+        orderBook.addOrder(first);
+        orderBook.addOrder(second);
+
+        orderBook.addOrder(order(Order.OrderType.BUY, 101.0, 4));
+
+        // The partially filled order is updated in place and stays at the front of its level
+        List<Order> sells = orderBook.getSellOrders();
+        assertSame(first, sells.get(0));
+        assertEquals(6, first.getQuantity());
+        assertEquals(4, first.getFilledQuantity());
+        assertSame(second, sells.get(1));
+
+        orderBook.addOrder(order(Order.OrderType.BUY, 101.0, 8));
+        assertTrue(first.isFilled());
+        assertEquals(8, second.getQuantity());
+        assertEquals(1, orderBook.getSellOrders().size());
+    }
+
+    @Test
+    void testLargeSweepGrowsTheRingInsteadOfOverwriting() {
+        FillRing fills = new FillRing(2);
+        OrderBook book = new OrderBook(testSymbol, OrderBook.DEFAULT_TICK_SIZE, new java.util.HashMap<>(), fills);
+        int[] received = new int[2];
+        fills.addListener((ring, from, to) -> {
+            for (long seq = from; seq < to; seq++) {
+                assertTrue(ring.isAvailable(seq));
+                received[0] += ring.getQuantity(seq);
+            }
+            received[1]++;
+        });
+
+        for (int i = 0; i < 5; i++) {
+            book.addOrder(order(Order.OrderType.SELL, 100.0 + i, 1));
+        }
+        book.addOrder(order(Order.OrderType.BUY, 110.0, 5));
+
+        // Delivered once, after the sweep, with every fill still in the ring
+        assertEquals(5, received[0]);
+        assertEquals(1, received[1]);
+        assertEquals(5, fills.getNextSequence());
+        assertEquals(8, fills.getCapacity());
+    }
+
+    @Test
+    void testImmediateOrCancelNeverRests() {
+        orderBook.addOrder(order(Order.OrderType.SELL, 101.0, 10));
+        orderBook.addOrder(order(Order.OrderType.SELL, 103.0, 10));
+
+        Order ioc = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, Order.OrderKind.LIMIT, 102.0, 15,
+            Order.TimeInForce.IMMEDIATE_OR_CANCEL);
+        orderBook.addOrder(ioc);
+
+        // Only the level inside the limit trades, and the remainder is not left in the book
+        assertEquals(10, ioc.getFilledQuantity());
+        assertEquals(5, ioc.getQuantity());
+        assertTrue(orderBook.getBuyOrders().isEmpty());
+        assertNull(orderBook.getOrder(ioc.getOrderId()));
+        assertEquals(1, orderBook.getSellOrders().size());
+    }
+
+    @Test
+    void testFillOrKillNeedsTheWholeQuantity() {
+        orderBook.addOrder(order(Order.OrderType.BUY, 100.0, 10));
+        orderBook.addOrder(order(Order.OrderType.BUY, 99.0, 10));
+
+        Order tooBig = new Order(sellerId, testSymbol, Order.OrderType.SELL, Order.OrderKind.LIMIT, 99.0, 25,
+            Order.TimeInForce.FILL_OR_KILL);
+        orderBook.addOrder(tooBig);
+        assertEquals(0, tooBig.getFilledQuantity());
+        assertEquals(0, orderBook.getVolume());
+        assertEquals(2, orderBook.getBuyOrders().size());
+
+        Order fits = new Order(sellerId, testSymbol, Order.OrderType.SELL, Order.OrderKind.LIMIT, 99.0, 20,
+            Order.TimeInForce.FILL_OR_KILL);
+        orderBook.addOrder(fits);
+        assertTrue(fits.isFilled());
+        assertTrue(orderBook.getBuyOrders().isEmpty());
+        assertTrue(orderBook.getSellOrders().isEmpty());
+    }
+
+    @Test
+    void testFillOrKillDoesNotCountTheTakersOwnOrders() {
+        orderBook.addOrder(order(Order.OrderType.BUY, 100.0, 10));
+        Order own = new Order(sellerId, testSymbol, Order.OrderType.BUY, 99.0, 10);
+        orderBook.addOrder(own);
+
+        // The level totals would cover it, but half of that is the seller's own bid
+        Order fok = new Order(sellerId, testSymbol, Order.OrderType.SELL, Order.OrderKind.LIMIT, 99.0, 20,
+            Order.TimeInForce.FILL_OR_KILL);
+        orderBook.addOrder(fok);
+        assertEquals(0, fok.getFilledQuantity());
+        assertEquals(0, orderBook.getVolume());
+        assertEquals(2, orderBook.getBuyOrders().size());
+        assertSame(own, orderBook.getOrder(own.getOrderId()));
+    }
+
+    @Test
+    void testMarketOrderTakesMakerPrices() {
+        orderBook.addOrder(order(Order.OrderType.SELL, 101.0, 5));
+        orderBook.addOrder(order(Order.OrderType.SELL, 150.0, 5));
+
+        Order market = new Order(testPlayerId, testSymbol, Order.OrderType.BUY, Order.OrderKind.MARKET, 0, 8,
+            Order.TimeInForce.IMMEDIATE_OR_CANCEL);
+        orderBook.addOrder(market);
+
+        assertTrue(market.isFilled());
+        assertEquals(150.0, orderBook.getLastTradePrice());
+        assertEquals(2, orderBook.getSellOrders().get(0).getQuantity());
+        assertThrows(IllegalArgumentException.class, () -> new Order(testPlayerId, testSymbol, Order.OrderType.BUY,
+            Order.OrderKind.MARKET, 0, 1, Order.TimeInForce.GOOD_TILL_CANCEL));
+    }
+
+    @Test
+    void testStopsFireOnlyWhenTheirPriceIsReached() {
+        orderBook.addOrder(order(Order.OrderType.BUY, 95.0, 10));
+        TriggerOrder firstStop = new TriggerOrder(sellerId, testSymbol, Order.OrderType.SELL,
+            TriggerOrder.TriggerType.STOP_LOSS, 98.0, 0, 4);
+        TriggerOrder secondStop = new TriggerOrder(sellerId, testSymbol, Order.OrderType.SELL,
+            TriggerOrder.TriggerType.STOP_LOSS, 99.0, 0, 3);
+        TriggerOrder farStop = new TriggerOrder(sellerId, testSymbol, Order.OrderType.SELL,
+            TriggerOrder.TriggerType.STOP_LOSS, 90.0, 0, 5);
+        orderBook.placeTrigger(firstStop);
+        orderBook.placeTrigger(secondStop);
+        orderBook.placeTrigger(farStop);
+
+        // A trade at 100 reaches none of the stops
+        orderBook.addOrder(order(Order.OrderType.SELL, 100.0, 1));
+        orderBook.addOrder(order(Order.OrderType.BUY, 100.0, 1));
+        assertEquals(3, orderBook.getPendingTriggerCount());
+
+        // A trade at 97 reaches both near stops; they are released oldest first into the 95 bid
+        orderBook.addOrder(order(Order.OrderType.SELL, 97.0, 1));
+        orderBook.addOrder(order(Order.OrderType.BUY, 97.0, 1));
+        assertEquals(1, orderBook.getPendingTriggerCount());
+        assertTrue(firstStop.getOrder().isFilled());
+        assertTrue(secondStop.getOrder().isFilled());
+        assertTrue(firstStop.getOrder().getOrderId() < secondStop.getOrder().getOrderId());
+        assertEquals(3, orderBook.getBuyOrders().get(0).getQuantity());
+        assertEquals(95.0, orderBook.getLastTradePrice());
+
+        assertTrue(orderBook.cancelOrder(farStop.getOrder().getOrderId()));
+        assertEquals(0, orderBook.getPendingTriggerCount());
+    }
+
+    @Test
+    void testTakeProfitAndStopLimitSurviveSave() {
+        orderBook.placeTrigger(new TriggerOrder(sellerId, testSymbol, Order.OrderType.SELL,
+            TriggerOrder.TriggerType.TAKE_PROFIT, 110.0, 0, 5));
+        orderBook.placeTrigger(new TriggerOrder(testPlayerId, testSymbol, Order.OrderType.BUY,
+            TriggerOrder.TriggerType.STOP_LIMIT, 105.0, 106.0, 7));
+
+        OrderBook restored = new OrderBook(testSymbol);
+        restored.deserializeNBT(orderBook.serializeNBT());
+        assertEquals(2, restored.getPendingTriggerCount());
+
+        // A trade at 107 releases the buy stop-limit, which rests at its 106 limit
+        restored.addOrder(order(Order.OrderType.SELL, 107.0, 1));
+        restored.addOrder(order(Order.OrderType.BUY, 107.0, 1));
+        assertEquals(1, restored.getPendingTriggerCount());
+        assertEquals(1, restored.getBuyOrders().size());
+        assertEquals(106.0, restored.getBuyOrders().get(0).getPrice());
+        assertEquals(7, restored.getBuyOrders().get(0).getQuantity());
+    }
+
+    @Test
+    void testPricesAreNormalizedToTicks() {
+        OrderBook coarse = new OrderBook(testSymbol, 0.5);
+        coarse.addOrder(order(Order.OrderType.BUY, 100.1, 10));
+        coarse.addOrder(order(Order.OrderType.SELL, 100.2, 10));
+
+        // Both prices round to the 100.0 tick, so the orders cross
+        assertEquals(100.0, coarse.getLastTradePrice());
+        assertEquals(200, coarse.toTicks(100.2));
+        assertEquals(100.0, coarse.toPrice(200));
+    }
+
+    @Test
+    void testSerializationRoundTrip() {
+        orderBook.addOrder(order(Order.OrderType.BUY, 99.0, 10));
+        orderBook.addOrder(order(Order.OrderType.BUY, 98.0, 20));
+        orderBook.addOrder(order(Order.OrderType.SELL, 101.0, 30));
+
+        OrderBook restored = new OrderBook(testSymbol);
+        restored.deserializeNBT(orderBook.serializeNBT());
+
+        assertEquals(2, restored.getBuyOrders().size());
+        assertEquals(99.0, restored.getBuyOrders().get(0).getPrice());
+        assertEquals(1, restored.getSellOrders().size());
+        assertEquals(30, restored.getSellOrders().get(0).getQuantity());
+    }
+}
@@ -0,0 +1,90 @@
+package com.stockmarketmod.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.UUID;
+
+public class PriceEngineTest {
+    @Test
+    void testBlendsOnlyTheInputsASymbolHas() {
+        PriceEngine engine = new PriceEngine();
+        engine.configure(0.5, 0.25, 0.25);
+        assertEquals(0.0, engine.getMarkPrice("IRON"));
+        assertFalse(engine.hasMarkPrice("IRON"));
+
+        engine.setModelPrice("IRON", 100.0);
+        assertEquals(100.0, engine.getMarkPrice("IRON"), 1e-9);
+
+        // A one-sided book has no mid
+        engine.onQuote("IRON", 98.0, 0.0);
+        assertEquals(100.0, engine.getMarkPrice("IRON"), 1e-9);
+        engine.onQuote("IRON", 98.0, 104.0);
+        assertEquals((0.25 * 101.0 + 0.25 * 100.0) / 0.5, engine.getMarkPrice("IRON"), 1e-9);
+
+        engine.onTrade("IRON", 110.0);
+        assertEquals(0.5 * 110.0 + 0.25 * 101.0 + 0.25 * 100.0, engine.getMarkPrice("IRON"), 1e-9);
+
+        // Reweighting recomputes the published marks
+        engine.configure(1.0, 0.0, 0.0);
+        assertEquals(110.0, engine.getMarkPrice("IRON"), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> engine.configure(0.0, 0.0, 0.0));
+    }
+
+    @Test
+    void testFollowsFillsAsTheyHappen() {
+        Market market = new Market(1L);
+        market.registerStock("GOLD", 150.0, 0.0);
+        PriceEngine engine = new PriceEngine();
+        engine.configure(1.0, 0.0, 1.0);
+        engine.setModelPrice("GOLD", 150.0);
+        market.addFillListener(engine);
+
+        UUID seller = UUID.randomUUID();
+        UUID buyer = UUID.randomUUID();
+        market.placeOrder(new Order(seller, "GOLD", Order.OrderType.SELL, 160.0, 5));
+        assertEquals(150.0, engine.getMarkPrice("GOLD"), 1e-9);
+        market.placeOrder(new Order(buyer, "GOLD", Order.OrderType.BUY, 160.0, 5));
+        assertEquals(155.0, engine.getMarkPrice("GOLD"), 1e-9);
+        assertEquals(155.0, engine.getMarkPrices().get("GOLD"), 1e-9);
+    }
+
+    @Test
+    void testMarkFollowsTheModelAgainAfterAnOldFill() {
+        PriceEngine engine = new PriceEngine();
+        engine.configure(0.5, 0.0, 0.5);
+        engine.setTradeLifetime(1000);
+        engine.setModelPrice("COAL", 100.0);
+        engine.onTrade("COAL", 200.0, 0L);
+        assertEquals(150.0, engine.getMarkPrice("COAL"), 1e-9);
+
+        // Half way through its lifetime the trade counts half
+        engine.advance(500);
+        assertEquals((0.25 * 200.0 + 0.5 * 100.0) / 0.75, engine.getMarkPrice("COAL"), 1e-9);
+        assertEquals(100.0, engine.getModelPrice("COAL"), 1e-9);
+
+        engine.advance(1000);
+        assertEquals(100.0, engine.getMarkPrice("COAL"), 1e-9);
+        engine.setModelPrice("COAL", 90.0);
+        assertEquals(90.0, engine.getMarkPrice("COAL"), 1e-9);
+    }
+
+    @Test
+    void testTradeAgeSurvivesSaveAndLoad() {
+        PriceEngine engine = new PriceEngine();
+        engine.configure(0.5, 0.0, 0.5);
+        engine.setTradeLifetime(1000);
+        engine.setModelPrice("COAL", 100.0);
+        engine.onTrade("COAL", 200.0, 0L);
+        engine.advance(500);
+
+        PriceEngine loaded = new PriceEngine();
+        loaded.configure(0.5, 0.0, 0.5);
+        loaded.setTradeLifetime(1000);
+        loaded.deserializeNBT(engine.serializeNBT());
+        assertEquals(engine.getMarkPrice("COAL"), loaded.getMarkPrice("COAL"), 1e-9);
+        assertEquals(100.0, loaded.getModelPrice("COAL"), 1e-9);
+        loaded.advance(1000);
+        assertEquals(100.0, loaded.getMarkPrice("COAL"), 1e-9);
+    }
+}
@@ -0,0 +1,54 @@
+package com.stockmarketmod.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+public class SectorRegistryTest {
+    private SectorRegistry sectors;
+
+    @BeforeEach
+    void setUp() {
+        sectors = new SectorRegistry();
+        sectors.defineSector("mining", SectorRegistry.MARKET);
+        sectors.defineSector("gems", "mining");
+        sectors.defineSector("farming", SectorRegistry.MARKET);
+        sectors.addStock("IRON", "mining");
+        sectors.addStock("WHEAT", "farming");
+        sectors.addStock("DIAM", "gems");
+    }
+
+    @Test
+    void testMembershipIncludesSubSectors() {
+        assertArrayEquals(new int[] {0, 1, 2}, sectors.getMemberIds(SectorRegistry.MARKET));
+        assertArrayEquals(new int[] {0, 2}, sectors.getMemberIds("mining"));
+        assertArrayEquals(new int[] {2}, sectors.getMemberIds("gems"));
+        assertArrayEquals(new int[] {1}, sectors.getMemberIds("farming"));
+        assertEquals("DIAM", sectors.getSymbol(2));
+        assertEquals("gems", sectors.getHomeSector("DIAM"));
+        assertEquals(List.of("mining", "farming"), sectors.getChildren(SectorRegistry.MARKET));
+    }
+
+    @Test
+    void testIndicesCutAcrossSectors() {
+        sectors.defineSector("blue-chip", SectorRegistry.MARKET);
+        sectors.addMember("blue-chip", "DIAM");
+        sectors.addMember("blue-chip", "WHEAT");
+
+        assertArrayEquals(new int[] {1, 2}, sectors.getMemberIds("blue-chip"));
+        assertTrue(sectors.isMember("gems", "DIAM"));
+        assertFalse(sectors.isMember("blue-chip", "IRON"));
+    }
+
+    @Test
+    void testMovingAStockUpdatesEverySectorAboveIt() {
+        int id = sectors.addStock("IRON", "farming");
+        assertEquals(0, id);
+        assertArrayEquals(new int[] {2}, sectors.getMemberIds("mining"));
+        assertArrayEquals(new int[] {0, 1}, sectors.getMemberIds("farming"));
+        assertArrayEquals(new int[] {0, 1, 2}, sectors.getMemberIds(SectorRegistry.MARKET));
+        assertThrows(IllegalArgumentException.class, () -> sectors.addStock("GOLD", "unknown"));
+    }
+}
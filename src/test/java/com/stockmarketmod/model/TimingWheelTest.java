@@ -0,0 +1,51 @@
+package com.stockmarketmod.model;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TimingWheelTest {
+
+    @Test
+    void testEntriesFireExactlyAtTheirDeadline() {
+        TimingWheel wheel = new TimingWheel();
+        Random random = new Random(42);
+        long[] deadlines = new long[2000];
+        for (int id = 0; id < deadlines.length; id++) {
+            // Spread over several levels, including cascades across level boundaries
+            deadlines[id] = 1 + random.nextInt(300_000);
+            wheel.schedule(id, deadlines[id]);
+        }
+
+        int[] fired = {0};
+        for (long tick = 1; tick <= 300_000; tick++) {
+            long now = tick;
+            wheel.advance(now, id -> {
+                assertEquals(deadlines[(int) id], now);
+                fired[0]++;
+            });
+        }
+        assertEquals(deadlines.length, fired[0]);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testJumpingAheadFiresEverythingDue() {
+        TimingWheel wheel = new TimingWheel();
+        wheel.schedule(1, 100);
+        wheel.schedule(2, 5_000);
+        wheel.schedule(3, 40_000_000L); // Beyond the top level
+
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(10_000, fired::add);
+        assertEquals(List.of(1L, 2L), fired);
+
+        wheel.advance(39_999_999L, fired::add);
+        assertEquals(2, fired.size());
+        wheel.advance(40_000_000L, fired::add);
+        assertEquals(List.of(1L, 2L, 3L), fired);
+    }
+}
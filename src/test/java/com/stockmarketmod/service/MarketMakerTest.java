@@ -0,0 +1,72 @@
+package com.stockmarketmod.service;
+
+import com.stockmarketmod.model.Market;
+import com.stockmarketmod.model.Order;
+import com.stockmarketmod.model.OrderBook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.UUID;
+
+public class MarketMakerTest {
+    private Market market;
+    private MarketMaker marketMaker;
+    private String testSymbol = "TEST";
+
+    @BeforeEach
+    void setUp() {
+        market = new Market();
+        market.registerStock(testSymbol, 100.0, 0.1);
+        marketMaker = new MarketMaker(market, UUID.randomUUID());
+        marketMaker.configure(3, 0.02, 0.01, 10);
+    }
+
+    @Test
+    void testRequotingKeepsBookSizeConstant() {
+        for (int cycle = 0; cycle < 50; cycle++) {
+            marketMaker.requote(testSymbol, 100.0 + cycle);
+        }
+        OrderBook book = market.getOrderBooks().get(testSymbol);
+
+        assertEquals(3, book.getBuyOrders().size());
+        assertEquals(3, book.getSellOrders().size());
+        // Quotes sit at 1% either side of the last mid price, then 1% further per level
+        assertEquals(147.51, book.getBuyOrders().get(0).getPrice(), 0.01);
+        assertEquals(150.49, book.getSellOrders().get(0).getPrice(), 0.01);
+        assertEquals(146.02, book.getBuyOrders().get(1).getPrice(), 0.01);
+    }
+
+    @Test
+    void testRequotingNeverTradesWithItself() {
+        marketMaker.requote(testSymbol, 100.0);
+        OrderBook book = market.getOrderBooks().get(testSymbol);
+        long bestBidId = book.getBuyOrders().get(0).getOrderId();
+        long bestAskId = book.getSellOrders().get(0).getOrderId();
+        marketMaker.requote(testSymbol, 105.0);
+        marketMaker.requote(testSymbol, 95.0);
+
+        // Every quote was moved, none crossed the other side and had to be replaced
+        assertEquals(0, market.getFills().getNextSequence());
+        assertEquals(bestBidId, book.getBuyOrders().get(0).getOrderId());
+        assertEquals(bestAskId, book.getSellOrders().get(0).getOrderId());
+        assertEquals(3, book.getBuyOrders().size());
+        assertEquals(3, book.getSellOrders().size());
+        assertEquals(94.05, book.getBuyOrders().get(0).getPrice(), 0.01);
+        assertEquals(95.95, book.getSellOrders().get(0).getPrice(), 0.01);
+    }
+
+    @Test
+    void testFilledQuoteIsReplaced() {
+        marketMaker.requote(testSymbol, 100.0);
+        OrderBook book = market.getOrderBooks().get(testSymbol);
+        Order bestAsk = book.getSellOrders().get(0);
+
+        market.placeOrder(new Order(UUID.randomUUID(), testSymbol, Order.OrderType.BUY, bestAsk.getPrice(), 10));
+        assertEquals(2, book.getSellOrders().size());
+
+        marketMaker.requote(testSymbol, 100.0);
+        assertEquals(3, book.getSellOrders().size());
+        assertEquals(10, book.getSellOrders().get(0).getQuantity());
+    }
+}